@@ -0,0 +1,53 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Helper construction, as done in every activity that keeps helpers in fields.
+ * Allocation rate reported by gc profiler approximates retained size of a helper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class BuildBenchmark {
+
+    private Activity mActivity;
+    private String[] mPermissions;
+
+    @Setup
+    public void setUp() {
+        mActivity = new Activity();
+        mPermissions = Stubs.permissions(2);
+    }
+
+    @Benchmark
+    public EzPermission build() {
+        return EzPermission.of(mActivity, 1, mPermissions)
+                .isModal(true)
+                .onGranted(Stubs.NOP)
+                .onRationale(Stubs.NOP)
+                .onDenied(Stubs.NOP)
+                .onDeniedPermanantly(Stubs.NOP)
+                .build();
+    }
+}
@@ -0,0 +1,55 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link EzPermission#call()} in steady state, with stubbed guards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class CallBenchmark {
+
+    private EzPermission mGranted;
+    private EzPermission mDenied;
+
+    @Setup
+    public void setUp() {
+        mGranted = Stubs.helper(1, Stubs.permissions(2), true, false);
+        mGranted.call();
+        mDenied = Stubs.helper(2, Stubs.permissions(2), false, false);
+        mDenied.setCurrentState(Fsm.State.DENIED);
+        mDenied.call();
+        if(mGranted.getCurrentState() != Fsm.State.GRANTED || mDenied.getCurrentState() != Fsm.State.DENIED) {
+            throw new IllegalStateException("Helpers not in steady state");
+        }
+    }
+
+    @Benchmark
+    public void callGranted() {
+        mGranted.call();
+    }
+
+    @Benchmark
+    public void callDenied() {
+        mDenied.call();
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * State machine dispatch for every reachable transition. Guards are constant,
+ * so this measures dispatch overhead only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class FsmBenchmark {
+
+    public enum Transition {
+        START_DISPATCH_GRANTED(Fsm.State.START, Fsm.Event.DISPATCH, true, false, true, Fsm.State.GRANTED),
+        START_DISPATCH_RATIONALE(Fsm.State.START, Fsm.Event.DISPATCH, false, true, true, Fsm.State.RATIONALE),
+        START_DISPATCH_REQUESTING(Fsm.State.START, Fsm.Event.DISPATCH, false, false, true, Fsm.State.REQUESTING),
+        RATIONALE_DISPATCH_REQUESTING(Fsm.State.RATIONALE, Fsm.Event.DISPATCH, false, true, true, Fsm.State.REQUESTING),
+        RATIONALE_REJECT_START(Fsm.State.RATIONALE, Fsm.Event.REJECT, false, true, true, Fsm.State.START),
+        REQUESTING_GRANTED_GRANTED(Fsm.State.REQUESTING, Fsm.Event.GRANTED, true, false, true, Fsm.State.GRANTED),
+        REQUESTING_DENIED_START(Fsm.State.REQUESTING, Fsm.Event.DENIED, false, true, true, Fsm.State.START),
+        REQUESTING_DENIED_RATIONALE(Fsm.State.REQUESTING, Fsm.Event.DENIED, false, true, false, Fsm.State.RATIONALE),
+        REQUESTING_DENIED_DENIED(Fsm.State.REQUESTING, Fsm.Event.DENIED, false, false, true, Fsm.State.DENIED),
+        REQUESTING_CANCELLED_START(Fsm.State.REQUESTING, Fsm.Event.CANCELLED, false, false, true, Fsm.State.START),
+        REQUESTING_CANCELLED_RATIONALE(Fsm.State.REQUESTING, Fsm.Event.CANCELLED, false, false, false, Fsm.State.RATIONALE),
+        DENIED_DISPATCH_DENIED(Fsm.State.DENIED, Fsm.Event.DISPATCH, false, false, true, Fsm.State.DENIED),
+        DENIED_DISPATCH_GRANTED(Fsm.State.DENIED, Fsm.Event.DISPATCH, true, false, true, Fsm.State.GRANTED),
+        GRANTED_DISPATCH_DENIED(Fsm.State.GRANTED, Fsm.Event.DISPATCH, false, false, true, Fsm.State.DENIED),
+        GRANTED_DISPATCH_GRANTED(Fsm.State.GRANTED, Fsm.Event.DISPATCH, true, false, true, Fsm.State.GRANTED);
+
+        final Fsm.State from;
+        final Fsm.Event event;
+        final boolean isGranted;
+        final boolean canShowRationale;
+        final boolean isRationaleModal;
+        final Fsm.State to;
+
+        Transition(Fsm.State from, Fsm.Event event, boolean isGranted, boolean canShowRationale, boolean isRationaleModal, Fsm.State to) {
+            this.from = from;
+            this.event = event;
+            this.isGranted = isGranted;
+            this.canShowRationale = canShowRationale;
+            this.isRationaleModal = isRationaleModal;
+            this.to = to;
+        }
+    }
+
+    @Param
+    public Transition transition;
+
+    private Fsm mFsm;
+
+    @Setup
+    public void setUp() {
+        int conditions = (transition.isGranted ? Fsm.IS_GRANTED : 0)
+                | (transition.canShowRationale ? Fsm.CAN_SHOW_RATIONALE : 0)
+                | (transition.isRationaleModal ? Fsm.IS_RATIONALE_MODAL : 0);
+        mFsm = new Fsm(null,
+                       Stubs.conditions(conditions),
+                       Fsm.ALL_CONDITIONS,
+                       Stubs.NOP, Stubs.NOP, Stubs.NOP, Stubs.NOP, Stubs.NOP, Stubs.NOP);
+        if(event() != transition.to) {
+            throw new IllegalStateException("Transition " + transition + " ended in " + mFsm.getCurrentState());
+        }
+    }
+
+    @Benchmark
+    public Fsm.State event() {
+        mFsm.setCurrentState(transition.from);
+        mFsm.event(transition.event);
+        return mFsm.getCurrentState();
+    }
+}
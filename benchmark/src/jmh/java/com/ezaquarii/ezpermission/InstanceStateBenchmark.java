@@ -0,0 +1,78 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Instance state keys and save/restore round trip, in current packed format
+ * and in legacy Serializable format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class InstanceStateBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int permissionsCount;
+
+    private String[] mPermissions;
+    private EzPermission mHelper;
+    private Bundle mSavedState;
+    private Bundle mLegacySavedState;
+
+    @Setup
+    public void setUp() {
+        mPermissions = Stubs.permissions(permissionsCount);
+        mHelper = Stubs.helper(1, mPermissions, true, false);
+        mHelper.call();
+        mSavedState = new Bundle();
+        mHelper.saveInstanceState(mSavedState);
+        mLegacySavedState = new Bundle();
+        mLegacySavedState.putBoolean(EzPermission.createExtraKey(EzPermission.class.getName() + ".DEGUG", mPermissions), false);
+        mLegacySavedState.putSerializable(EzPermission.createExtraKey(EzPermission.class.getName() + ".FSM_STATE", mPermissions), Fsm.State.GRANTED);
+    }
+
+    @Benchmark
+    public String createExtraKey() {
+        return EzPermission.createExtraKey("com.ezaquarii.ezpermission.EzPermission.FSM_STATE", mPermissions);
+    }
+
+    @Benchmark
+    public Bundle saveInstanceState() {
+        Bundle outState = new Bundle();
+        mHelper.saveInstanceState(outState);
+        return outState;
+    }
+
+    @Benchmark
+    public EzPermission restoreInstanceState() {
+        mHelper.restoreInstanceState(mSavedState);
+        return mHelper;
+    }
+
+    @Benchmark
+    public EzPermission restoreLegacyInstanceState() {
+        mHelper.restoreInstanceState(mLegacySavedState);
+        return mHelper;
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Permission request result evaluation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class RequestResultBenchmark {
+
+    private static final int REQUEST_CODE = 1;
+
+    @Param({"1", "5", "20"})
+    public int permissionsCount;
+
+    private EzPermission mHelper;
+    private String[] mPermissions;
+    private int[] mGranted;
+    private int[] mDenied;
+
+    @Setup
+    public void setUp() {
+        mPermissions = Stubs.permissions(permissionsCount);
+        mGranted = Stubs.grantResults(permissionsCount, PackageManager.PERMISSION_GRANTED);
+        mDenied = Stubs.grantResults(permissionsCount, PackageManager.PERMISSION_DENIED);
+        if(permissionsCount > 1) {
+            // partial denial
+            mDenied[0] = PackageManager.PERMISSION_GRANTED;
+        }
+        mHelper = Stubs.helper(REQUEST_CODE, mPermissions, false, false);
+    }
+
+    @Benchmark
+    public Fsm.State granted() {
+        mHelper.setCurrentState(Fsm.State.REQUESTING);
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, mPermissions, mGranted);
+        return mHelper.getCurrentState();
+    }
+
+    @Benchmark
+    public Fsm.State denied() {
+        mHelper.setCurrentState(Fsm.State.REQUESTING);
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, mPermissions, mDenied);
+        return mHelper.getCurrentState();
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Guards and callbacks used to drive benchmarked code without Android framework.
+ */
+final class Stubs {
+
+    static final Runnable NOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private Stubs() {}
+
+    static Callable<Boolean> constant(final boolean value) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return value;
+            }
+        };
+    }
+
+    static Fsm.Conditions conditions(final int values) {
+        return new Fsm.Conditions() {
+            @Override
+            public boolean evaluate(int condition) throws Exception {
+                return (values & condition) != 0;
+            }
+        };
+    }
+
+    static String[] permissions(int count) {
+        String[] permissions = new String[count];
+        for(int i = 0; i < count; i++) {
+            permissions[i] = "com.ezaquarii.ezpermission.benchmark.PERMISSION_" + i;
+        }
+        return permissions;
+    }
+
+    static int[] grantResults(int count, int result) {
+        int[] grantResults = new int[count];
+        for(int i = 0; i < count; i++) {
+            grantResults[i] = result;
+        }
+        return grantResults;
+    }
+
+    static EzPermission helper(int requestCode, String[] permissions, boolean isGranted, boolean canShowRationale) {
+        return EzPermission.of(requestCode, permissions)
+                .isModal(true)
+                .onGranted(NOP)
+                .onRationale(NOP)
+                .onDenied(NOP)
+                .onDeniedPermanantly(NOP)
+                .onRequest(NOP)
+                .isPermissionGranted(constant(isGranted))
+                .canShowRationale(constant(canShowRationale))
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Method that requires permissions. Annotation processor generates
+ * {@code <Host>Permissions} class with a method of the same name, which
+ * calls annotated method when permissions are granted.
+ *
+ * Host must be an activity or a support library fragment. Annotated method
+ * must not be private or static and it must not take parameters.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface NeedsPermission {
+
+    /**
+     * Request code used when request code is not set explicitly; generated
+     * helpers use consecutive codes starting from this value, skipping codes
+     * set explicitly. Range does not overlap with codes assigned by
+     * {@code EzPermissionRegistry}.
+     */
+    int FIRST_REQUEST_CODE = 0x5000;
+
+    /**
+     * Last request code that can be assigned automatically.
+     */
+    int LAST_REQUEST_CODE = 0x5fff;
+
+    /**
+     * Request codes from this value up to {@code 0xffff} are assigned by
+     * {@code EzPermissionRegistry}, so they cannot be set explicitly. Support
+     * library rejects request codes that do not fit lower 16 bits.
+     */
+    int FIRST_REGISTRY_REQUEST_CODE = 0x6000;
+
+    /**
+     * @return Required permissions
+     */
+    String[] value();
+
+    /**
+     * @return Request code below {@link #FIRST_REGISTRY_REQUEST_CODE} or -1 to assign request code automatically
+     */
+    int requestCode() default -1;
+
+    /**
+     * @return true if rationale is modal; see {@code EzPermission.Builder#isModal(boolean)}
+     */
+    boolean modal() default false;
+}
@@ -0,0 +1,211 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide permission flow instrumentation. It is disabled by default.
+ *
+ * When enabled, every state machine collects funnel counters aggregated per
+ * permission set and reports transitions, guard evaluation time and permission
+ * request latency to optional {@link Listener}. When disabled, state machine
+ * pays a single volatile read per event.
+ */
+public final class EzPermissionMetrics {
+
+    /**
+     * Receives instrumentation events. It is called on the thread that drives
+     * the state machine; guard timings are reported on the thread evaluating
+     * guards, which can be a background thread in asynchronous mode.
+     */
+    public interface Listener {
+
+        void onTransition(PermissionSet permissions, Fsm.Event event, Fsm.State from, Fsm.State to);
+
+        void onGuardEvaluated(PermissionSet permissions, Guard guard, boolean value, long durationNanos);
+
+        /**
+         * Called when permission request is answered.
+         *
+         * @param permissions Requested permissions
+         * @param isGranted true if all permissions have been granted
+         * @param latencyNanos Time from entering requesting state to result
+         */
+        void onRequestCompleted(PermissionSet permissions, boolean isGranted, long latencyNanos);
+    }
+
+    public enum Guard {
+        IS_GRANTED,
+        CAN_SHOW_RATIONALE,
+        IS_RATIONALE_MODAL,
+        WAS_DENIED
+    }
+
+    public enum Counter {
+        RATIONALE_SHOWN,
+        RATIONALE_ACCEPTED,
+        RATIONALE_REJECTED,
+        GRANTED,
+        DENIED,
+        DENIED_PERMANENTLY
+    }
+
+    /**
+     * Immutable snapshot of funnel counters of a single permission set.
+     */
+    public static final class Counters {
+
+        private final long[] mValues;
+
+        Counters(long[] values) {
+            mValues = values;
+        }
+
+        public long get(Counter counter) {
+            return mValues[counter.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("{");
+            for(Counter counter : COUNTERS) {
+                if(builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(counter).append('=').append(mValues[counter.ordinal()]);
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Guard[] GUARDS = Guard.values();
+
+    static volatile boolean sEnabled = false;
+    private static volatile Listener sListener = null;
+    private static final ConcurrentHashMap<PermissionSet, AtomicLongArray> sCounters = new ConcurrentHashMap<>();
+
+    private EzPermissionMetrics() {}
+
+    /**
+     * Enable instrumentation.
+     *
+     * @param listener Listener receiving instrumentation events or null, if only counters should be collected
+     */
+    public static void enable(Listener listener) {
+        sListener = listener;
+        sEnabled = true;
+    }
+
+    public static void disable() {
+        sEnabled = false;
+        sListener = null;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return Snapshot of funnel counters of every permission set seen since last reset
+     */
+    public static Map<PermissionSet, Counters> snapshot() {
+        Map<PermissionSet, Counters> snapshot = new HashMap<>();
+        for(Map.Entry<PermissionSet, AtomicLongArray> entry : sCounters.entrySet()) {
+            AtomicLongArray counters = entry.getValue();
+            long[] values = new long[counters.length()];
+            for(int i = 0; i < values.length; i++) {
+                values[i] = counters.get(i);
+            }
+            snapshot.put(entry.getKey(), new Counters(values));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    public static void reset() {
+        sCounters.clear();
+    }
+
+    /**
+     * Record state machine transition. Called only when metrics are enabled.
+     * Permissions denied permanently according to request history are counted
+     * as permanent denial, although they have not been requested.
+     */
+    static void onTransition(PermissionSet permissions, Fsm.Event event, Fsm.State from, Fsm.State to, long requestStartNanos) {
+        if(to == Fsm.State.RATIONALE) {
+            increment(permissions, Counter.RATIONALE_SHOWN);
+        }
+        if(from == Fsm.State.RATIONALE && event == Fsm.Event.DISPATCH && to == Fsm.State.REQUESTING) {
+            increment(permissions, Counter.RATIONALE_ACCEPTED);
+        }
+        if((from == Fsm.State.START || from == Fsm.State.RATIONALE) && to == Fsm.State.DENIED) {
+            increment(permissions, Counter.DENIED_PERMANENTLY);
+        }
+        if(from == Fsm.State.REQUESTING) {
+            if(event == Fsm.Event.GRANTED) {
+                increment(permissions, Counter.GRANTED);
+            } else if(event == Fsm.Event.DENIED) {
+                increment(permissions, to == Fsm.State.DENIED ? Counter.DENIED_PERMANENTLY : Counter.DENIED);
+            }
+        }
+
+        final Listener listener = sListener;
+        if(listener != null) {
+            listener.onTransition(permissions, event, from, to);
+            if(from == Fsm.State.REQUESTING && requestStartNanos != 0 && (event == Fsm.Event.GRANTED || event == Fsm.Event.DENIED)) {
+                listener.onRequestCompleted(permissions, event == Fsm.Event.GRANTED, System.nanoTime() - requestStartNanos);
+            }
+        }
+    }
+
+    /**
+     * Record rejected rationale. Non-modal rationale stays shown when rejected,
+     * so rejection is reported by the flow rather than derived from transitions.
+     * Called only when metrics are enabled.
+     */
+    static void onRationaleRejected(PermissionSet permissions) {
+        increment(permissions, Counter.RATIONALE_REJECTED);
+    }
+
+    /**
+     * Report guard evaluation time. Called only when metrics are enabled.
+     */
+    static void onGuardEvaluated(PermissionSet permissions, int condition, boolean value, long durationNanos) {
+        final Listener listener = sListener;
+        if(listener != null) {
+            listener.onGuardEvaluated(permissions, GUARDS[Integer.numberOfTrailingZeros(condition)], value, durationNanos);
+        }
+    }
+
+    private static void increment(PermissionSet permissions, Counter counter) {
+        if(permissions == null) {
+            return;
+        }
+        AtomicLongArray counters = sCounters.get(permissions);
+        if(counters == null) {
+            final AtomicLongArray created = new AtomicLongArray(COUNTERS.length);
+            counters = sCounters.putIfAbsent(permissions, created);
+            if(counters == null) {
+                counters = created;
+            }
+        }
+        counters.incrementAndGet(counter.ordinal());
+    }
+}
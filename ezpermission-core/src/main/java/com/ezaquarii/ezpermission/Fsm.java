@@ -0,0 +1,571 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Permission flow state machine. It is driven by {@link PermissionFlow}.
+ */
+
+/*
+@startuml
+
+[*] --> START : [isRationaleModal]
+[*] --> RATIONALE : [!isRationaleModal]
+START --> RATIONALE : DISPATCH\n[!isGranted &&\ncanShowRationale]
+START --> REQUESTING : DISPATCH\n[!isGranted &&\n!canShowRationale &&\n!wasDenied]
+START --> DENIED : DISPATCH\n[!isGranted &&\n!canShowRationale &&\nwasDenied]
+START --> GRANTED : DISPATCH\n[isGranted]
+RATIONALE ---> REQUESTING : DISPATCH\n[isRationaleModal ||\n!wasDenied]
+RATIONALE ---> DENIED : DISPATCH\n[!isRationaleModal &&\nwasDenied]
+REQUESTING --> GRANTED : GRANTED
+REQUESTING --> START : DENIED / onDenied()\n[canShowRationale &&\nisRationaleModal]
+REQUESTING --> RATIONALE : DENIED / onDenied()\n[canShowRationale &&\n!isRationaleModal]
+REQUESTING --> DENIED : DENIED\n[!canShowRationale]
+REQUESTING --> START : CANCELLED / onCancelled()\n[isRationaleModal]
+REQUESTING --> RATIONALE : CANCELLED / onCancelled()\n[!isRationaleModal]
+GRANTED --> GRANTED : DISPATCH\n[isGranted]
+GRANTED --> DENIED : DISPATCH\n[!isGranted]
+DENIED --> DENIED : DISPATCH\n[!isGranted]
+DENIED --> GRANTED : DISPATCH\n[isGranted]
+
+GRANTED : entry: onGranted()
+RATIONALE : entry: onRationale()
+REQUESTING : entry: onRequest()
+DENIED : entry: onDeniedPermanently()
+
+@enduml
+*/
+public final class Fsm {
+
+    public enum State {
+        START,
+        RATIONALE,
+        REQUESTING,
+        GRANTED,
+        DENIED
+    }
+
+    public enum Event {
+        DISPATCH,
+        GRANTED,
+        DENIED,
+        CANCELLED,
+        REJECT
+    }
+
+    /**
+     * Receives state machine transitions in debug mode.
+     */
+    public interface Logger {
+
+        /**
+         * @param transition Transition decoded from {@link TransitionTrace}
+         */
+        void log(String transition);
+    }
+
+    /**
+     * Evaluates state machine conditions. Condition is one of {@link #IS_GRANTED},
+     * {@link #CAN_SHOW_RATIONALE}, {@link #IS_RATIONALE_MODAL} or {@link #WAS_DENIED}.
+     */
+    interface Conditions {
+        boolean evaluate(int condition) throws Exception;
+    }
+
+    static final int IS_GRANTED = 1;
+    static final int CAN_SHOW_RATIONALE = 1 << 1;
+    static final int IS_RATIONALE_MODAL = 1 << 2;
+
+    /**
+     * Permission request has been denied in the past, according to persistent history.
+     */
+    static final int WAS_DENIED = 1 << 3;
+    static final int ALL_CONDITIONS = IS_GRANTED | CAN_SHOW_RATIONALE | IS_RATIONALE_MODAL | WAS_DENIED;
+
+    static final int ACTION_NONE = 0;
+    static final int ACTION_ON_DENIED = 1;
+    static final int ACTION_ON_CANCELLED = 2;
+
+    private static final State[] STATES = State.values();
+    private static final Event[] EVENTS = Event.values();
+    private static final Row[] NO_ROWS = new Row[0];
+
+    /**
+     * State word layout: state ordinal in the lowest bits, transition
+     * counter in the remaining bits. Counter makes every transition
+     * change the word, even if state does not change.
+     */
+    private static final int STATE_BITS = 4;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+    private static final AtomicIntegerFieldUpdater<Fsm> STATE_WORD =
+            AtomicIntegerFieldUpdater.newUpdater(Fsm.class, "mStateWord");
+
+    /**
+     * Selection layout: index of selected row plus one in the lowest bits,
+     * then conditions evaluated to select it and their values. Selection is
+     * returned by value, so racing events do not share any state.
+     */
+    private static final int SELECTION_ROW_MASK = 0xffff;
+    private static final int SELECTION_KNOWN_SHIFT = 16;
+    private static final int SELECTION_VALUES_SHIFT = 20;
+
+    private static final AtomicLongFieldUpdater<Fsm> REQUEST_START_NANOS =
+            AtomicLongFieldUpdater.newUpdater(Fsm.class, "mRequestStartNanos");
+
+    /**
+     * Transition row. Guard is a conjunction of conditions: all conditions
+     * from {@link #require} must be true and all conditions from {@link #forbid}
+     * must be false.
+     */
+    static final class Row {
+        Row(State from, Event event, int require, int forbid, State to) {
+            this(from, event, require, forbid, to, ACTION_NONE);
+        }
+
+        Row(State from, Event event, int require, int forbid, State to, int action) {
+            this.event = event;
+            this.require = require;
+            this.forbid = forbid;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        final Event event;
+        final int require;
+        final int forbid;
+        final State from;
+        final State to;
+        final int action;
+    }
+
+    /**
+     * Transition table shared by all state machine instances.
+     */
+    static final Row[] TABLE = new Row[] {
+            new Row(State.START,      Event.DISPATCH,  IS_GRANTED,                              0,                                            State.GRANTED),
+            new Row(State.START,      Event.DISPATCH,  CAN_SHOW_RATIONALE,                      IS_GRANTED,                                   State.RATIONALE),
+            new Row(State.START,      Event.DISPATCH,  WAS_DENIED,                              IS_GRANTED | CAN_SHOW_RATIONALE,              State.DENIED),
+            new Row(State.START,      Event.DISPATCH,  0,                                       IS_GRANTED | CAN_SHOW_RATIONALE | WAS_DENIED, State.REQUESTING),
+            new Row(State.RATIONALE,  Event.DISPATCH,  WAS_DENIED,                              IS_RATIONALE_MODAL,                           State.DENIED),
+            new Row(State.RATIONALE,  Event.DISPATCH,  0,                                       0,                                            State.REQUESTING),
+            new Row(State.RATIONALE,  Event.REJECT,    IS_RATIONALE_MODAL,                      0,                                            State.START),
+            new Row(State.REQUESTING, Event.GRANTED,   0,                                       0,                                            State.GRANTED),
+            new Row(State.REQUESTING, Event.DENIED,    CAN_SHOW_RATIONALE | IS_RATIONALE_MODAL, 0,                                            State.START,      ACTION_ON_DENIED),
+            new Row(State.REQUESTING, Event.DENIED,    CAN_SHOW_RATIONALE,                      IS_RATIONALE_MODAL,                           State.RATIONALE,  ACTION_ON_DENIED),
+            new Row(State.REQUESTING, Event.DENIED,    0,                                       CAN_SHOW_RATIONALE,                           State.DENIED),
+            new Row(State.REQUESTING, Event.CANCELLED, IS_RATIONALE_MODAL,                      0,                                            State.START,      ACTION_ON_CANCELLED),
+            new Row(State.REQUESTING, Event.CANCELLED, 0,                                       IS_RATIONALE_MODAL,                           State.RATIONALE,  ACTION_ON_CANCELLED),
+            new Row(State.DENIED,     Event.DISPATCH,  0,                                       IS_GRANTED,                                   State.DENIED),
+            new Row(State.DENIED,     Event.DISPATCH,  IS_GRANTED,                              0,                                            State.GRANTED),
+            new Row(State.GRANTED,    Event.DISPATCH,  0,                                       IS_GRANTED,                                   State.DENIED),
+            new Row(State.GRANTED,    Event.DISPATCH,  IS_GRANTED,                              0,                                            State.GRANTED)
+    };
+
+    /**
+     * Transition table compiled into candidate rows, indexed by
+     * [state ordinal][event ordinal]. Rows in each bucket keep
+     * their {@link #TABLE} order, so first matching row wins
+     * exactly as in a linear scan.
+     */
+    private static final Row[][][] DISPATCH_TABLE = compile(TABLE);
+
+    /**
+     * Conditions used by guards of candidate rows, indexed by
+     * [state ordinal][event ordinal].
+     */
+    private static final int[][] DISPATCH_CONDITIONS = collectConditions(DISPATCH_TABLE);
+
+    /**
+     * Permissions handled by this state machine; used to aggregate metrics.
+     */
+    private final PermissionSet mPermissions;
+
+    private final Conditions mConditions;
+
+    /**
+     * Conditions evaluated at most once per event.
+     */
+    private final int mMemoizedConditions;
+
+    private final Runnable mOnGranted;
+    private final Runnable mOnRationale;
+    private final Runnable mOnRequest;
+    private final Runnable mOnDenied;
+    private final Runnable mOnDeniedPermanently;
+    private final Runnable mOnCancelled;
+
+    /**
+     * Current state packed with transition counter. See {@link #STATE_BITS}.
+     */
+    private volatile int mStateWord = State.START.ordinal();
+    private boolean mConcurrent = false;
+    private boolean mDebug = false;
+    private Logger mLogger = null;
+
+    /**
+     * Time of entering requesting state, recorded only when metrics are enabled.
+     * It is set when requesting state is entered and taken when it is left, so
+     * racing transitions of concurrent mode do not overwrite it. If callbacks of
+     * the result overtake callbacks of the request, latency is not reported.
+     */
+    private volatile long mRequestStartNanos = 0;
+
+    /**
+     * Helper id recorded in {@link TransitionTrace}.
+     */
+    private int mTraceId = 0;
+
+
+    /**
+     * @param permissions Permissions handled by state machine, used by metrics; can be null
+     * @param conditions State machine conditions
+     * @param memoizedConditions Conditions that can be evaluated once per event; other conditions are evaluated for every row
+     */
+    Fsm(PermissionSet permissions, Conditions conditions, int memoizedConditions, Runnable onGranted, Runnable onRationale, Runnable onRequest, Runnable onDenied, Runnable onDeniedPermanently, Runnable onCancelled) {
+        mPermissions = permissions;
+        mConditions = conditions;
+        mMemoizedConditions = memoizedConditions;
+        mOnGranted = onGranted;
+        mOnRationale = onRationale;
+        mOnRequest = onRequest;
+        mOnDenied = onDenied;
+        mOnDeniedPermanently = onDeniedPermanently;
+        mOnCancelled = onCancelled;
+    }
+
+    /**
+     * Bucket transition table rows by source state and event.
+     *
+     * @param table Transition table
+     * @return Candidate rows indexed by [state ordinal][event ordinal]
+     */
+    private static Row[][][] compile(Row[] table) {
+        Row[][][] dispatchTable = new Row[STATES.length][EVENTS.length][];
+        List<Row> bucket = new ArrayList<>(table.length);
+        for(State state : STATES) {
+            for(Event event : EVENTS) {
+                bucket.clear();
+                for(Row row : table) {
+                    if(row.from == state && row.event == event) {
+                        bucket.add(row);
+                    }
+                }
+                dispatchTable[state.ordinal()][event.ordinal()] = bucket.isEmpty() ? NO_ROWS : bucket.toArray(new Row[bucket.size()]);
+            }
+        }
+        return dispatchTable;
+    }
+
+    private static int[][] collectConditions(Row[][][] dispatchTable) {
+        int[][] conditions = new int[STATES.length][EVENTS.length];
+        for(State state : STATES) {
+            for(Event event : EVENTS) {
+                for(Row row : dispatchTable[state.ordinal()][event.ordinal()]) {
+                    conditions[state.ordinal()][event.ordinal()] |= row.require | row.forbid;
+                }
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * @return Conditions that may be evaluated when event is dispatched in given state
+     */
+    static int conditionsOf(State state, Event event) {
+        return DISPATCH_CONDITIONS[state.ordinal()][event.ordinal()];
+    }
+
+    /**
+     * Evaluate conditions ahead of event dispatch. This method does not
+     * touch state machine state, so it can be called from any thread
+     * as long as conditions can.
+     *
+     * @param conditions Conditions to evaluate
+     * @return Condition values
+     */
+    int evaluateConditions(int conditions) {
+        int values = 0;
+        for(int condition = 1; condition <= ALL_CONDITIONS; condition <<= 1) {
+            if((conditions & condition) != 0 && evaluate(condition)) {
+                values |= condition;
+            }
+        }
+        return values;
+    }
+
+    void start() {
+        if (evaluate(IS_RATIONALE_MODAL)) {
+            setCurrentState(State.START);
+        } else {
+            setCurrentState(State.RATIONALE);
+        }
+    }
+
+    State getCurrentState() {
+        return STATES[mStateWord & STATE_MASK];
+    }
+
+    /**
+     * @return Current state packed with transition counter; it changes on every transition
+     */
+    int getStateWord() {
+        return mStateWord;
+    }
+
+    void setCurrentState(State state) {
+        int word;
+        do {
+            word = mStateWord;
+        } while(!STATE_WORD.compareAndSet(this, word, nextWord(word, state)));
+    }
+
+    /**
+     * Enable concurrent mode. In concurrent mode events can be dispatched from
+     * many threads at once. Transition is committed with compare-and-set of
+     * the state word, so every event is applied exactly once, to the state
+     * its transition was selected for. Callbacks run after commit, without
+     * holding any lock, on the thread that dispatched the event; callbacks
+     * of concurrent transitions can interleave.
+     */
+    void setConcurrent(boolean concurrent) {
+        mConcurrent = concurrent;
+    }
+
+    boolean isConcurrent() {
+        return mConcurrent;
+    }
+
+    private static int nextWord(int word, State state) {
+        return ((word >>> STATE_BITS) + 1) << STATE_BITS | state.ordinal();
+    }
+
+    void event(Event event) {
+        event(event, 0, 0);
+    }
+
+    /**
+     * Dispatch event using pre-evaluated condition values. Conditions
+     * that are not known are evaluated as usual.
+     *
+     * @param event Event to dispatch
+     * @param known Pre-evaluated conditions
+     * @param values Values of pre-evaluated conditions
+     */
+    void event(Event event, int known, int values) {
+        if(mConcurrent) {
+            eventConcurrent(event, known, values);
+            return;
+        }
+        final int word = mStateWord;
+        final State state = STATES[word & STATE_MASK];
+        final Row[] rows = DISPATCH_TABLE[state.ordinal()][event.ordinal()];
+        final int selection = select(rows, state, event, known, values);
+        final Row row = rowOf(rows, selection);
+        if(row != null) {
+            onTransition(row, selection);
+            runAction(row);
+            mStateWord = nextWord(word, row.to);
+            runEntry(row);
+        }
+    }
+
+    /**
+     * Select transition for a snapshot of the state word and try to commit it.
+     * If other thread committed a transition in the meantime, selection is
+     * repeated for the new state. Pre-evaluated conditions may be stale
+     * after a lost race, so they are evaluated again.
+     */
+    private void eventConcurrent(Event event, int known, int values) {
+        Row row;
+        int selection;
+        while(true) {
+            final int word = mStateWord;
+            final State state = STATES[word & STATE_MASK];
+            final Row[] rows = DISPATCH_TABLE[state.ordinal()][event.ordinal()];
+            selection = select(rows, state, event, known, values);
+            row = rowOf(rows, selection);
+            if(row == null) {
+                return;
+            }
+            if(STATE_WORD.compareAndSet(this, word, nextWord(word, row.to))) {
+                break;
+            }
+            known = 0;
+            values = 0;
+        }
+        onTransition(row, selection);
+        runAction(row);
+        runEntry(row);
+    }
+
+    private void onTransition(Row row, int selection) {
+        if(TransitionTrace.isEnabled() || mDebug) {
+            final long timestamp = System.currentTimeMillis();
+            final long transition = TransitionTrace.pack(mTraceId, row.event, row.from, row.to,
+                                                         selection >>> SELECTION_KNOWN_SHIFT & ALL_CONDITIONS,
+                                                         selection >>> SELECTION_VALUES_SHIFT & ALL_CONDITIONS);
+            TransitionTrace.record(timestamp, transition);
+            if(mDebug && mLogger != null) {
+                mLogger.log(TransitionTrace.format(timestamp, transition));
+            }
+        }
+        if(EzPermissionMetrics.sEnabled) {
+            final long requestStartNanos = row.from == State.REQUESTING ? REQUEST_START_NANOS.getAndSet(this, 0) : 0;
+            if(row.to == State.REQUESTING) {
+                REQUEST_START_NANOS.set(this, System.nanoTime());
+            }
+            EzPermissionMetrics.onTransition(mPermissions, row.event, row.from, row.to, requestStartNanos);
+        }
+    }
+
+    private void runAction(Row row) {
+        if(row.action == ACTION_ON_DENIED && mOnDenied != null) {
+            mOnDenied.run();
+        } else if(row.action == ACTION_ON_CANCELLED && mOnCancelled != null) {
+            mOnCancelled.run();
+        }
+    }
+
+    private void runEntry(Row row) {
+        Runnable onEntry = getOnEntry(row.to);
+        if(onEntry != null) {
+            onEntry.run();
+        }
+    }
+
+    private Runnable getOnEntry(State state) {
+        switch(state) {
+            case GRANTED:
+                return mOnGranted;
+            case RATIONALE:
+                return mOnRationale;
+            case REQUESTING:
+                return mOnRequest;
+            case DENIED:
+                return mOnDeniedPermanently;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Find first transition matching current state, event and guard
+     * using compiled dispatch table.
+     *
+     * @return Matching row or null, if event should be ignored
+     */
+    Row findRow(State state, Event event) {
+        final Row[] rows = DISPATCH_TABLE[state.ordinal()][event.ordinal()];
+        return rowOf(rows, select(rows, state, event, 0, 0));
+    }
+
+    /**
+     * Find first transition by scanning entire transition table. This is the reference
+     * implementation of {@link #findRow(State, Event)} and it is used only in tests.
+     *
+     * @return Matching row or null, if event should be ignored
+     */
+    Row findRowLinear(State state, Event event) {
+        return rowOf(TABLE, select(TABLE, state, event, 0, 0));
+    }
+
+    /**
+     * Select first row with satisfied guard. Conditions are evaluated lazily, in
+     * bit order, and evaluation stops at first condition that rejects the row.
+     * Memoized condition values are kept in local bitmasks, so they
+     * are fresh for every event and nothing is allocated.
+     *
+     * @return Selection, see {@link #SELECTION_ROW_MASK}; use {@link #rowOf(Row[], int)} to get selected row
+     */
+    private int select(Row[] rows, State state, Event event, int known, int values) {
+        int evaluatedConditions = known;
+        int evaluatedValues = values & known;
+        for(int i = 0; i < rows.length; i++) {
+            final Row row = rows[i];
+            if(row.from != state || row.event != event) {
+                continue;
+            }
+            final int guard = row.require | row.forbid;
+            boolean satisfied = true;
+            for(int condition = 1; satisfied && condition <= ALL_CONDITIONS; condition <<= 1) {
+                if((guard & condition) == 0) {
+                    continue;
+                }
+                boolean value;
+                if((known & condition) != 0) {
+                    value = (values & condition) != 0;
+                } else {
+                    value = evaluate(condition);
+                    evaluatedConditions |= condition;
+                    evaluatedValues = value ? evaluatedValues | condition : evaluatedValues & ~condition;
+                    if((mMemoizedConditions & condition) != 0) {
+                        known |= condition;
+                        values |= value ? condition : 0;
+                    }
+                }
+                satisfied = value == ((row.require & condition) != 0);
+            }
+            if(satisfied) {
+                return (i + 1) | evaluatedConditions << SELECTION_KNOWN_SHIFT | evaluatedValues << SELECTION_VALUES_SHIFT;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Row selected by {@link #select(Row[], State, Event, int, int)} or null, if no row has been selected
+     */
+    private static Row rowOf(Row[] rows, int selection) {
+        final int index = selection & SELECTION_ROW_MASK;
+        return index == 0 ? null : rows[index - 1];
+    }
+
+    private boolean evaluate(int condition) {
+        try {
+            if(EzPermissionMetrics.sEnabled) {
+                final long start = System.nanoTime();
+                final boolean value = mConditions.evaluate(condition);
+                EzPermissionMetrics.onGuardEvaluated(mPermissions, condition, value, System.nanoTime() - start);
+                return value;
+            }
+            return mConditions.evaluate(condition);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    void setTraceId(int id) {
+        mTraceId = id;
+    }
+
+    void setLogger(Logger logger) {
+        mLogger = logger;
+    }
+
+    void setDebug(boolean debug) {
+        mDebug = debug;
+    }
+
+    boolean getDebug() {
+        return mDebug;
+    }
+}
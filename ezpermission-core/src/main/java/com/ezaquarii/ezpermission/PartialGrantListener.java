@@ -0,0 +1,39 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Receives changes of individual permissions of a permission set. Callbacks
+ * are called only when grant state of some permission changes.
+ */
+public interface PartialGrantListener {
+
+    /**
+     * Called when some, but not all permissions are granted. Features that
+     * depend only on granted permissions can be started.
+     *
+     * @param granted Granted permissions
+     * @param missing Permissions that are not granted
+     */
+    void onPartiallyGranted(PermissionSet granted, PermissionSet missing);
+
+    /**
+     * Called when permissions granted before are no longer granted,
+     * ex. when they are revoked in system settings.
+     *
+     * @param revoked Permissions that are no longer granted
+     */
+    void onRevoked(PermissionSet revoked);
+}
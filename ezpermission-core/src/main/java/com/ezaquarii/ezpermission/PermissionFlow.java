@@ -0,0 +1,896 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Platform independent permission request flow. It owns the state machine
+ * and evaluates permission request results; all platform calls are delegated
+ * to provided {@link PermissionPlatform}.
+ */
+public class PermissionFlow {
+
+    /**
+     * Grant result of a granted permission. Value matches
+     * Android {@code PackageManager.PERMISSION_GRANTED}.
+     */
+    public static final int PERMISSION_GRANTED = 0;
+
+    /**
+     * Grant result of a denied permission. Value matches
+     * Android {@code PackageManager.PERMISSION_DENIED}.
+     */
+    public static final int PERMISSION_DENIED = -1;
+
+    private final PermissionPlatform mPlatform;
+    private final int mRequestCode;
+    private final PermissionSet mPermissions;
+    private final String[] mPermissionsArray;
+
+    /**
+     * Permissions requested by default request action; results of other
+     * permissions are not expected.
+     */
+    private volatile PermissionSet mRequestedPermissions;
+    private int[] mPermissionIds = null;
+    private long[] mDeniedBits = null;
+    private volatile PermissionSet mDeniedPermissions = PermissionSet.EMPTY;
+    private List<String> mDeniedPermissionsList = Collections.emptyList();
+    private volatile boolean mIsRationaleModal = false;
+    private boolean mIsConcurrent = false;
+    private PermissionHistory mHistory = null;
+
+    /**
+     * Per-permission mode: last known grant state of every permission.
+     */
+    private PartialGrantListener mPartialGrantListener = null;
+    private final AtomicReference<PermissionSnapshot> mSnapshot = new AtomicReference<>();
+
+    /**
+     * Grant epoch shared with issued tokens; it is bumped every time flow
+     * enters denied state, which invalidates all tokens issued before.
+     */
+    private final AtomicInteger mGrantEpoch = new AtomicInteger();
+    private volatile PermissionToken mToken;
+
+    /**
+     * Outcome listeners; array is replaced on every change, so it can be
+     * iterated without locking or copying.
+     */
+    private static final PermissionOutcomeListener[] NO_LISTENERS = new PermissionOutcomeListener[0];
+    private volatile PermissionOutcomeListener[] mOutcomeListeners = NO_LISTENERS;
+
+    private final Runnable mOnRationaleAction;
+    private final Callable<Boolean> mCanShowRationale;
+    private final Callable<Boolean> mIsPermissionGranted;
+
+    private final Fsm mFsm;
+
+    private Executor mEvaluationExecutor = null;
+    private Executor mDeliveryExecutor = null;
+    private boolean mIsEvaluating = false;
+    private int mPendingCalls = 0;
+
+    /**
+     * Evaluates state machine conditions and runs default request action.
+     * Custom guards take precedence over platform calls.
+     */
+    private final class Delegate implements Fsm.Conditions, Runnable {
+
+        @Override
+        public boolean evaluate(int condition) throws Exception {
+            switch(condition) {
+                case Fsm.IS_GRANTED:
+                    return mIsPermissionGranted != null ? mIsPermissionGranted.call() : isGranted();
+                case Fsm.CAN_SHOW_RATIONALE:
+                    return mCanShowRationale != null ? mCanShowRationale.call() : canShowRationale();
+                case Fsm.IS_RATIONALE_MODAL:
+                    return mIsRationaleModal;
+                case Fsm.WAS_DENIED:
+                    return wasDenied();
+                default:
+                    throw new IllegalArgumentException("Unknown condition: " + condition);
+            }
+        }
+
+        @Override
+        public void run() {
+            final PermissionSet missing = checkMissingPermissions();
+            mRequestedPermissions = missing;
+            mPlatform.requestPermissions(missing == mPermissions ? mPermissionsArray : missing.toArray(), mRequestCode);
+        }
+    }
+
+    /**
+     * Callback reporting flow outcome. Token is updated before user callback
+     * runs, so callback can already use it; outcome listeners are notified last.
+     */
+    private final class OutcomeAction implements Runnable {
+
+        private final PermissionOutcome mOutcome;
+        private final Runnable mAction;
+
+        OutcomeAction(PermissionOutcome outcome, Runnable action) {
+            mOutcome = outcome;
+            mAction = action;
+        }
+
+        @Override
+        public void run() {
+            if(mOutcome == PermissionOutcome.GRANTED) {
+                issueToken();
+                recordGranted();
+            } else if(mOutcome == PermissionOutcome.DENIED_PERMANENTLY) {
+                mGrantEpoch.incrementAndGet();
+            }
+            if(mAction != null) {
+                mAction.run();
+            }
+            notifyOutcome(mOutcome);
+        }
+    }
+
+    /**
+     * Create permission flow.
+     *
+     * @param platform Platform calls used by default guards and default request action
+     * @param requestCode Expected request code; flow will not handle results with invalid request code
+     * @param permissions Permission to ask for
+     * @param isRationaleModal True if rationale is modal (like a dialog), false otherwise; consult state machine diagram to see behavioral change
+     * @param onGranted Called when permissions is granted
+     * @param onRationale Called when rationale should be shown
+     * @param onDenied Called when permissions is denied; permissions can be requested again
+     * @param onDeniedPermanantly Called when permissions is denied permanently
+     * @param onCancelled Called when permissions request has been interrupted
+     * @param onRequest Called when permissions should be requested; when null, default behaviour will be used
+     * @param canShowRationale Should return true if rationale should be shown, false otherwise; when null, default guard will be used
+     * @param memoizeCanShowRationale True if custom rationale guard can be evaluated once per event
+     * @param isPermissionGranted Should return true if permissions is granted, false otherwise; when null, default guard will be used
+     * @param memoizeIsPermissionGranted True if custom permission guard can be evaluated once per event
+     */
+    public PermissionFlow(PermissionPlatform platform,
+                          int requestCode,
+                          String[] permissions,
+                          boolean isRationaleModal,
+                          Runnable onGranted,
+                          Runnable onRationale,
+                          Runnable onDenied,
+                          Runnable onDeniedPermanantly,
+                          Runnable onCancelled,
+                          Runnable onRequest,
+                          Callable<Boolean> canShowRationale,
+                          boolean memoizeCanShowRationale,
+                          Callable<Boolean> isPermissionGranted,
+                          boolean memoizeIsPermissionGranted) {
+
+        mPlatform = platform;
+        mRequestCode = requestCode;
+        mPermissionsArray = permissions.clone();
+        mPermissions = PermissionSet.of(permissions);
+        mRequestedPermissions = mPermissions;
+        mIsRationaleModal = isRationaleModal;
+        mOnRationaleAction = onRationale;
+        mCanShowRationale = canShowRationale;
+        mIsPermissionGranted = isPermissionGranted;
+        mToken = new PermissionToken(mPermissions, mGrantEpoch, -1);
+
+        int memoizedConditions = Fsm.ALL_CONDITIONS;
+        if(canShowRationale != null && !memoizeCanShowRationale) {
+            memoizedConditions &= ~Fsm.CAN_SHOW_RATIONALE;
+        }
+        if(isPermissionGranted != null && !memoizeIsPermissionGranted) {
+            memoizedConditions &= ~Fsm.IS_GRANTED;
+        }
+
+        final Delegate delegate = new Delegate();
+        mFsm = new Fsm(mPermissions,
+                       delegate,
+                       memoizedConditions,
+                       new OutcomeAction(PermissionOutcome.GRANTED, onGranted),
+                       onRationale,
+                       onRequest != null ? onRequest : delegate,
+                       new OutcomeAction(PermissionOutcome.DENIED, onDenied),
+                       new OutcomeAction(PermissionOutcome.DENIED_PERMANENTLY, onDeniedPermanantly),
+                       new OutcomeAction(PermissionOutcome.CANCELLED, onCancelled));
+        mFsm.setTraceId(requestCode);
+        mFsm.start();
+    }
+
+    private boolean isGranted() {
+        for(int id = mPermissions.nextId(0); id >= 0; id = mPermissions.nextId(id + 1)) {
+            if(!mPlatform.isGranted(PermissionSet.nameOf(id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canShowRationale() {
+        if(mOnRationaleAction == null) {
+            return false;
+        }
+        final PermissionSet missing = getMissingPermissions();
+        for(int id = missing.nextId(0); id >= 0; id = missing.nextId(id + 1)) {
+            if(mPlatform.shouldShowRationale(PermissionSet.nameOf(id))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Permissions that still have to be granted, according to last result: permissions
+     * denied in last result or all permissions, if nothing has been denied yet.
+     */
+    private PermissionSet getMissingPermissions() {
+        final PermissionSet denied = getDeniedPermissionSet();
+        return denied.isEmpty() ? mPermissions : denied;
+    }
+
+    /**
+     * Permissions that still have to be granted, checked before request, as
+     * permissions can be revoked in system settings since last result. With
+     * custom permission guard, platform cannot be asked, so last result is used.
+     */
+    private PermissionSet checkMissingPermissions() {
+        if(mIsPermissionGranted != null) {
+            return getMissingPermissions();
+        }
+        long[] missing = null;
+        for(int id = mPermissions.nextId(0); id >= 0; id = mPermissions.nextId(id + 1)) {
+            if(!mPlatform.isGranted(PermissionSet.nameOf(id))) {
+                if(missing == null) {
+                    missing = new long[mPermissions.wordCount()];
+                }
+                missing[id >>> 6] |= 1L << id;
+            }
+        }
+        if(missing == null || mPermissions.hasWords(missing)) {
+            return mPermissions;
+        }
+        return new PermissionSet(missing);
+    }
+
+    /**
+     * Check if any permission that is not granted has been denied permanently in
+     * the past. It is evaluated only when permissions are not granted and rationale
+     * cannot be shown, or when non-modal rationale is dispatched, so platform is
+     * asked only in these rare cases.
+     */
+    private boolean wasDenied() {
+        final PermissionHistory history = mHistory;
+        if(history == null) {
+            return false;
+        }
+        for(int id = mPermissions.nextId(0); id >= 0; id = mPermissions.nextId(id + 1)) {
+            final String permission = PermissionSet.nameOf(id);
+            if(history.wasDeniedPermanently(permission) && !mPlatform.isGranted(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find denied permissions that cannot be requested again. Right after denial,
+     * platform allows rationale for every permission, unless user asked not to
+     * be asked again.
+     */
+    private PermissionSet checkDeniedPermanently(String[] permissions, int[] grantResults) {
+        String[] deniedPermanently = null;
+        int count = 0;
+        for(int i = 0; i < permissions.length; i++) {
+            if(grantResults[i] != PERMISSION_GRANTED && !mPlatform.shouldShowRationale(permissions[i])) {
+                if(deniedPermanently == null) {
+                    deniedPermanently = new String[permissions.length];
+                }
+                deniedPermanently[count++] = permissions[i];
+            }
+        }
+        return count == 0 ? PermissionSet.EMPTY : PermissionSet.of(Arrays.copyOf(deniedPermanently, count));
+    }
+
+    /**
+     * Record permissions found granted, if they had been denied permanently, so
+     * they are requested again when revoked in system settings.
+     */
+    private void recordGranted() {
+        final PermissionHistory history = mHistory;
+        if(history == null) {
+            return;
+        }
+        for(String permission : mPermissionsArray) {
+            if(history.wasDeniedPermanently(permission)) {
+                history.record(mPermissionsArray, new int[mPermissionsArray.length], PermissionSet.EMPTY);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Use persistent request history. Permissions denied permanently in the past
+     * are not requested again; flow goes straight to denied state instead.
+     * Permissions denied with rationale allowed can still be requested.
+     *
+     * @param history Request history or null to disable it
+     */
+    public void setHistory(PermissionHistory history) {
+        mHistory = history;
+    }
+
+    /**
+     * Enable per-permission mode. In addition to aggregate state of all permissions,
+     * flow tracks grant state of every permission and reports partial grants and
+     * revocations to listener. Permission checks done by {@link #call()} cover all
+     * permissions, so default guard does not stop at the first missing permission.
+     *
+     * In asynchronous mode, grant state is updated only by request results.
+     *
+     * @param listener Listener receiving changes of individual permissions or null to disable per-permission mode
+     */
+    public void setPartialGrantListener(PartialGrantListener listener) {
+        mPartialGrantListener = listener;
+        if(listener == null) {
+            mSnapshot.set(null);
+        }
+    }
+
+    /**
+     * @return Last known grant state of every permission or null, if per-permission mode is disabled or state is not known yet
+     */
+    public PermissionSnapshot getSnapshot() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * Store new grant state and report difference to previous state. Snapshot is
+     * swapped atomically, so every change is reported once, even in concurrent mode.
+     *
+     * @param granted Granted permissions
+     */
+    private void updateSnapshot(PermissionSet granted) {
+        final PartialGrantListener listener = mPartialGrantListener;
+        if(listener == null) {
+            return;
+        }
+        final PermissionSnapshot snapshot = new PermissionSnapshot(mPermissions, granted.intersection(mPermissions));
+        PermissionSnapshot previous;
+        do {
+            previous = mSnapshot.get();
+            if(previous != null && previous.getGranted().equals(snapshot.getGranted())) {
+                return;
+            }
+        } while(!mSnapshot.compareAndSet(previous, snapshot));
+
+        if(previous != null) {
+            final PermissionSet revoked = previous.getGranted().difference(snapshot.getGranted());
+            if(!revoked.isEmpty()) {
+                listener.onRevoked(revoked);
+            }
+        }
+        if(snapshot.isAnyGranted() && !snapshot.isAllGranted()) {
+            listener.onPartiallyGranted(snapshot.getGranted(), snapshot.getDenied());
+        }
+    }
+
+    /**
+     * Issue new token unless current one is still valid. State is checked after
+     * epoch is read: if flow has been denied in the meantime, epoch has already
+     * been bumped or will be bumped after the state change, so token is never
+     * valid in denied state.
+     */
+    private void issueToken() {
+        if(mToken.isValid()) {
+            return;
+        }
+        final int epoch = mGrantEpoch.get();
+        if(mFsm.getCurrentState() == Fsm.State.GRANTED) {
+            mToken = new PermissionToken(mPermissions, mGrantEpoch, epoch);
+        }
+    }
+
+    /**
+     * Get token proving that permissions are granted. Token is issued when flow
+     * enters granted state and it is invalidated when flow detects that permissions
+     * are no longer granted. Checking token validity is a single volatile read.
+     *
+     * @return Current token; it is invalid if permissions have not been granted yet or have been revoked
+     */
+    public PermissionToken getToken() {
+        return mToken;
+    }
+
+    /**
+     * Add listener notified about every outcome of this flow, after flow callback.
+     * Listener can remove itself when notified.
+     *
+     * @param listener Outcome listener
+     */
+    public synchronized void addOutcomeListener(PermissionOutcomeListener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        final PermissionOutcomeListener[] listeners = mOutcomeListeners;
+        final PermissionOutcomeListener[] added = new PermissionOutcomeListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, added, 0, listeners.length);
+        added[listeners.length] = listener;
+        mOutcomeListeners = added;
+    }
+
+    /**
+     * Remove outcome listener. Nothing happens if listener has not been added.
+     *
+     * @param listener Outcome listener
+     */
+    public synchronized void removeOutcomeListener(PermissionOutcomeListener listener) {
+        final PermissionOutcomeListener[] listeners = mOutcomeListeners;
+        for(int i = 0; i < listeners.length; i++) {
+            if(listeners[i] == listener) {
+                if(listeners.length == 1) {
+                    mOutcomeListeners = NO_LISTENERS;
+                    return;
+                }
+                final PermissionOutcomeListener[] removed = new PermissionOutcomeListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, removed, 0, i);
+                System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+                mOutcomeListeners = removed;
+                return;
+            }
+        }
+    }
+
+    private void notifyOutcome(PermissionOutcome outcome) {
+        final PermissionOutcomeListener[] listeners = mOutcomeListeners;
+        for(int i = 0; i < listeners.length; i++) {
+            listeners[i].onOutcome(outcome);
+        }
+    }
+
+    /**
+     * Call code that requires permission. If permission is not granted,
+     * the state machine will handle the flow to request the permission.
+     */
+    public void call() {
+        if(mEvaluationExecutor == null) {
+            if(mPartialGrantListener != null && mIsPermissionGranted == null
+                    && (Fsm.conditionsOf(mFsm.getCurrentState(), Fsm.Event.DISPATCH) & Fsm.IS_GRANTED) != 0) {
+                final PermissionSnapshot snapshot = PermissionSnapshot.check(mPermissions, mPlatform);
+                updateSnapshot(snapshot.getGranted());
+                mFsm.event(Fsm.Event.DISPATCH, Fsm.IS_GRANTED, snapshot.isAllGranted() ? Fsm.IS_GRANTED : 0);
+                return;
+            }
+            mFsm.event(Fsm.Event.DISPATCH);
+            return;
+        }
+        mPendingCalls++;
+        if(!mIsEvaluating) {
+            dispatchAsync();
+        }
+    }
+
+    /**
+     * Enable asynchronous dispatch. Guards of {@link #call()} are evaluated
+     * on evaluation executor and the transition, with all callbacks, is applied
+     * on delivery executor, which must be the thread that calls this flow.
+     *
+     * Calls made while guards are being evaluated are queued and dispatched one by
+     * one, in order. If state changes before evaluation result is delivered,
+     * guards are evaluated again for the new state.
+     *
+     * @param evaluationExecutor Executor evaluating guards, ex. background thread pool
+     * @param deliveryExecutor Executor applying transitions, ex. main thread executor
+     */
+    public void setAsync(Executor evaluationExecutor, Executor deliveryExecutor) {
+        if((evaluationExecutor == null) != (deliveryExecutor == null)) {
+            throw new IllegalArgumentException("Both evaluation and delivery executors must be provided");
+        }
+        if(evaluationExecutor != null && mIsConcurrent) {
+            throw new IllegalStateException("Asynchronous dispatch cannot be combined with concurrent mode");
+        }
+        mEvaluationExecutor = evaluationExecutor;
+        mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Enable concurrent mode. In concurrent mode {@link #call()}, rationale
+     * callbacks and {@link #onRequestPermissionsResult(int, String[], int[])}
+     * can be called from many threads at once. Every event is applied
+     * exactly once and callbacks run on the calling thread, without holding
+     * any lock, so they must be thread-safe themselves.
+     *
+     * Denied permissions are published as immutable snapshots, so
+     * reading them allocates a new list on every call.
+     *
+     * This method must be called before flow is shared between threads.
+     *
+     * @param concurrent true to enable concurrent mode
+     */
+    public void setConcurrent(boolean concurrent) {
+        if(concurrent && mEvaluationExecutor != null) {
+            throw new IllegalStateException("Concurrent mode cannot be combined with asynchronous dispatch");
+        }
+        if(concurrent) {
+            initPermissionIds();
+            getDeniedPermissionSet();
+        }
+        mIsConcurrent = concurrent;
+        mFsm.setConcurrent(concurrent);
+    }
+
+    public boolean isConcurrent() {
+        return mIsConcurrent;
+    }
+
+    /**
+     * @return true if guards of a call are being evaluated asynchronously
+     */
+    public boolean isEvaluating() {
+        return mIsEvaluating;
+    }
+
+    private void dispatchAsync() {
+        final int word = mFsm.getStateWord();
+        final Fsm.State state = mFsm.getCurrentState();
+        final int conditions = Fsm.conditionsOf(state, Fsm.Event.DISPATCH);
+        if(conditions == 0) {
+            mPendingCalls--;
+            mFsm.event(Fsm.Event.DISPATCH);
+            if(mPendingCalls > 0 && !mIsEvaluating) {
+                dispatchAsync();
+            }
+            return;
+        }
+
+        mIsEvaluating = true;
+        mEvaluationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final int values = mFsm.evaluateConditions(conditions);
+                    mDeliveryExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            onConditionsEvaluated(word, conditions, values);
+                        }
+                    });
+                } catch (final RuntimeException ex) {
+                    mDeliveryExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            mIsEvaluating = false;
+                            mPendingCalls = 0;
+                            throw ex;
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply evaluated guards, unless any transition happened in the meantime.
+     * State word is compared, not state, so guards evaluated before a round
+     * trip to the same state are not applied either.
+     */
+    private void onConditionsEvaluated(int word, int conditions, int values) {
+        mIsEvaluating = false;
+        if(mFsm.getStateWord() != word) {
+            dispatchAsync();
+            return;
+        }
+        mPendingCalls--;
+        mFsm.event(Fsm.Event.DISPATCH, conditions, values);
+        if(mPendingCalls > 0 && !mIsEvaluating) {
+            dispatchAsync();
+        }
+    }
+
+    /**
+     * Notify the state machine that rationale has been accepted.
+     */
+    public void acceptRationale() {
+        call();
+    }
+
+    /**
+     * Notify the state machine that rationale has been rejected. If rationale
+     * was shown, rejection is counted by metrics and outcome listeners are
+     * notified about denial; modal rationale returns to start state, non-modal
+     * rationale stays shown.
+     */
+    public void rejectRationale() {
+        final Fsm.State state = mFsm.getCurrentState();
+        mFsm.event(Fsm.Event.REJECT);
+        if(state == Fsm.State.RATIONALE) {
+            if(EzPermissionMetrics.sEnabled) {
+                EzPermissionMetrics.onRationaleRejected(mPermissions);
+            }
+            notifyOutcome(PermissionOutcome.DENIED);
+        }
+    }
+
+    /**
+     * @return true if flow can be revalidated with grant state checked by the caller
+     */
+    boolean needsGrantCheck() {
+        return mIsPermissionGranted == null && (isRevalidated(mFsm.getCurrentState()) || mPartialGrantListener != null);
+    }
+
+    /**
+     * Revalidate granted or denied state with grant state checked by the caller,
+     * ex. by a watcher that checks permissions of many flows at once. Flow with
+     * custom permission guard evaluates its own guard. Other states are left
+     * intact, as dispatch would start requesting permissions. In per-permission
+     * mode, grant state of every permission is updated in any state.
+     *
+     * @param granted Granted permissions; it must contain results of all permissions of this flow
+     * @return true if state did not match grant state and it has been revalidated
+     */
+    boolean revalidate(PermissionSet granted) {
+        if(mIsPermissionGranted == null) {
+            updateSnapshot(granted);
+        }
+        final Fsm.State state = mFsm.getCurrentState();
+        if(!isRevalidated(state) || mIsEvaluating) {
+            return false;
+        }
+        final boolean isGranted;
+        if(mIsPermissionGranted != null) {
+            isGranted = mFsm.evaluateConditions(Fsm.IS_GRANTED) != 0;
+        } else {
+            isGranted = granted.containsAll(mPermissions);
+        }
+        if(isGranted == (state == Fsm.State.GRANTED)) {
+            return false;
+        }
+        mFsm.event(Fsm.Event.DISPATCH, Fsm.IS_GRANTED, isGranted ? Fsm.IS_GRANTED : 0);
+        return true;
+    }
+
+    private static boolean isRevalidated(Fsm.State state) {
+        return state == Fsm.State.GRANTED || state == Fsm.State.DENIED;
+    }
+
+    /**
+     * Deliver permissions request result. Results with different request
+     * code are ignored.
+     *
+     * Empty results, delivered when permissions request is interrupted, are treated as
+     * cancellation, not denial.
+     */
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if(requestCode != mRequestCode) {
+            return;
+        }
+
+        if(permissions == null || grantResults == null) {
+            throw new IllegalArgumentException("Requested permissions and grant result cannot be null");
+        }
+
+        if(permissions.length != grantResults.length) {
+            throw new IllegalArgumentException("Permissions and grant result size differ");
+        }
+
+        if(permissions.length == 0) {
+            mFsm.event(Fsm.Event.CANCELLED);
+            return;
+        }
+
+        final PermissionHistory history = mHistory;
+        if(history != null) {
+            history.record(permissions, grantResults, checkDeniedPermanently(permissions, grantResults));
+        }
+
+        final boolean allGranted = evaluateGrantResults(permissions, grantResults);
+        if(mPartialGrantListener != null) {
+            updateSnapshot(mPermissions.difference(getDeniedPermissionSet()));
+        }
+        if(allGranted) {
+            mFsm.event(Fsm.Event.GRANTED);
+        } else {
+            mFsm.event(Fsm.Event.DENIED);
+        }
+    }
+
+    /**
+     * Evaluate grant results in a single pass and store denied permissions. Results
+     * are usually delivered in request order, so permission id is taken from
+     * precomputed table; interned id is looked up only if order does not match.
+     *
+     * @param permissions Requested permissions
+     * @param grantResults Grant results that match requested permissions
+     * @return true if all permissions are granted, false otherwise
+     */
+    private boolean evaluateGrantResults(String[] permissions, int[] grantResults) {
+        if(mIsConcurrent) {
+            final long[] deniedBits = new long[mPermissions.wordCount()];
+            final boolean allGranted = clearGranted(deniedBits, permissions, grantResults);
+            mDeniedPermissions = new PermissionSet(deniedBits);
+            return allGranted;
+        }
+        if(mDeniedBits == null) {
+            mDeniedBits = new long[mPermissions.wordCount()];
+            initPermissionIds();
+        }
+        final boolean allGranted = clearGranted(mDeniedBits, permissions, grantResults);
+        if(mDeniedPermissions != null && !mDeniedPermissions.hasWords(mDeniedBits)) {
+            mDeniedPermissions = null;
+            mDeniedPermissionsList = null;
+        }
+        return allGranted;
+    }
+
+    private void initPermissionIds() {
+        if(mPermissionIds != null) {
+            return;
+        }
+        final int[] permissionIds = new int[mPermissionsArray.length];
+        for(int i = 0; i < mPermissionsArray.length; i++) {
+            permissionIds[i] = PermissionSet.idOf(mPermissionsArray[i]);
+        }
+        mPermissionIds = permissionIds;
+    }
+
+    /**
+     * Fill bitmask with requested permissions and clear granted ones. Permissions
+     * that were not requested, because they had been granted before, stay granted.
+     *
+     * @return true if all permissions are granted, false otherwise
+     */
+    private boolean clearGranted(long[] deniedBits, String[] permissions, int[] grantResults) {
+        mRequestedPermissions.copyWordsTo(deniedBits);
+        final boolean isRequestOrder = permissions.length == mPermissionsArray.length;
+        for(int i = 0; i < permissions.length; i++) {
+            if(grantResults[i] != PERMISSION_GRANTED) {
+                continue;
+            }
+            int id;
+            if(isRequestOrder && mPermissionsArray[i].equals(permissions[i])) {
+                id = mPermissionIds[i];
+            } else {
+                id = PermissionSet.idOf(permissions[i]);
+            }
+            int index = id >>> 6;
+            if(id >= 0 && index < deniedBits.length) {
+                deniedBits[index] &= ~(1L << id);
+            }
+        }
+
+        for(long word : deniedBits) {
+            if(word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get list of denied permissions. Result is valid only after {@link #onRequestPermissionsResult(int, String[], int[])}
+     * is called.
+     *
+     * @return Unmodifiable list of denied permissions.
+     */
+    public List<String> getDeniedPermissions() {
+        if(mIsConcurrent) {
+            return mDeniedPermissions.asList();
+        }
+        if(mDeniedPermissionsList == null) {
+            mDeniedPermissionsList = getDeniedPermissionSet().asList();
+        }
+        return mDeniedPermissionsList;
+    }
+
+    /**
+     * Get set of denied permissions. Result is valid only after {@link #onRequestPermissionsResult(int, String[], int[])}
+     * is called. Returned set is reused until request result changes.
+     *
+     * @return Set of denied permissions.
+     */
+    public PermissionSet getDeniedPermissionSet() {
+        if(mDeniedPermissions == null) {
+            mDeniedPermissions = new PermissionSet(mDeniedBits.clone());
+        }
+        return mDeniedPermissions;
+    }
+
+    /**
+     * Check if permission has been denied. Result is valid only after {@link #onRequestPermissionsResult(int, String[], int[])}
+     * is called. This call does not allocate.
+     *
+     * @param permission Permission to check
+     * @return true if permission has been denied
+     */
+    public boolean isPermissionDenied(String permission) {
+        if(mIsConcurrent) {
+            return mDeniedPermissions.contains(permission);
+        }
+        if(mDeniedBits == null) {
+            return false;
+        }
+        int id = PermissionSet.idOf(permission);
+        int index = id >>> 6;
+        return id >= 0 && index < mDeniedBits.length && (mDeniedBits[index] & (1L << id)) != 0;
+    }
+
+    /**
+     * Toggle between modal and modeless rationale. This flag will change
+     * internal state machine flow.
+     *
+     * @param isModal True if rationale is modal (dialog), false if modeless ("full-screen")
+     */
+    public void setIsModalRationale(boolean isModal) {
+        mIsRationaleModal = isModal;
+    }
+
+    public int getRequestCode() {
+        return mRequestCode;
+    }
+
+    public PermissionSet getPermissions() {
+        return mPermissions;
+    }
+
+    /**
+     * @return Permissions in requested order; returned array must not be modified
+     */
+    String[] getPermissionsArray() {
+        return mPermissionsArray;
+    }
+
+    public Fsm.State getCurrentState() {
+        return mFsm.getCurrentState();
+    }
+
+    /**
+     * Force state machine state. It is used to restore saved state. Issued tokens
+     * are invalidated, as forced state has not been verified.
+     *
+     * @param state New state machine state
+     */
+    public void setCurrentState(Fsm.State state) {
+        mFsm.setCurrentState(state);
+        mGrantEpoch.incrementAndGet();
+    }
+
+    /**
+     * Set debug flag. In debug mode, state machine transitions are recorded in
+     * {@link TransitionTrace} and passed to logger.
+     *
+     * @param debug true to enable state machine debug log, false to disable
+     */
+    public void setDebug(boolean debug) {
+        mFsm.setDebug(debug);
+    }
+
+    public boolean getDebug() {
+        return mFsm.getDebug();
+    }
+
+    /**
+     * Set logger receiving state machine transitions in debug mode.
+     *
+     * @param logger Transitions logger or null
+     */
+    public void setLogger(Fsm.Logger logger) {
+        mFsm.setLogger(logger);
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Persistent history of permission request results.
+ *
+ * Platform reports the same rationale flag for permissions that have never been
+ * requested and for permissions denied permanently. With history, permission flow
+ * tells them apart and does not request permanently denied permissions again
+ * after process restart.
+ */
+public interface PermissionHistory {
+
+    /**
+     * @param permission Permission to check
+     * @return true if last recorded result of permission is permanent denial
+     */
+    boolean wasDeniedPermanently(String permission);
+
+    /**
+     * Record permission request result. It is called on the thread delivering
+     * results, so implementation should not block it. It is also called with
+     * granted results when flow finds permissions granted after they had been
+     * denied permanently, ex. in system settings.
+     *
+     * @param permissions Requested permissions
+     * @param grantResults Grant results that match requested permissions
+     * @param deniedPermanently Denied permissions that cannot be requested again, as rationale could not be shown after denial
+     */
+    void record(String[] permissions, int[] grantResults, PermissionSet deniedPermanently);
+}
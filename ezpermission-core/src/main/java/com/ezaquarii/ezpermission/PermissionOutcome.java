@@ -0,0 +1,40 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Outcome of permission flow, reported to {@link PermissionOutcomeListener}.
+ */
+public enum PermissionOutcome {
+    /**
+     * All permissions are granted.
+     */
+    GRANTED,
+
+    /**
+     * Permissions or rationale have been denied; permissions can be requested again.
+     */
+    DENIED,
+
+    /**
+     * Permissions have been denied permanently; they can be granted only in system settings.
+     */
+    DENIED_PERMANENTLY,
+
+    /**
+     * Permission request has been interrupted.
+     */
+    CANCELLED
+}
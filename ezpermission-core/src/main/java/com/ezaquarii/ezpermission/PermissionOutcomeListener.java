@@ -0,0 +1,29 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Receives outcomes of permission flow, in addition to flow callbacks.
+ * Many listeners can observe a single flow, ex. to await its outcome.
+ */
+public interface PermissionOutcomeListener {
+
+    /**
+     * Called after flow callback of the outcome, on the same thread.
+     *
+     * @param outcome Flow outcome
+     */
+    void onOutcome(PermissionOutcome outcome);
+}
@@ -0,0 +1,37 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Platform calls used by {@link PermissionFlow}. On Android, it is
+ * implemented with activity or fragment permissions API.
+ */
+public interface PermissionPlatform extends PermissionChecker {
+
+    /**
+     * @param permission Permission to check
+     * @return true if rationale should be shown before permission is requested
+     */
+    boolean shouldShowRationale(String permission);
+
+    /**
+     * Request permissions. Results must be delivered to
+     * {@link PermissionFlow#onRequestPermissionsResult(int, String[], int[])}.
+     *
+     * @param permissions Permissions to request
+     * @param requestCode Request code
+     */
+    void requestPermissions(String[] permissions, int requestCode);
+}
@@ -0,0 +1,355 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable set of permissions.
+ *
+ * Permission names are interned into small, process-wide integer ids
+ * and the set is stored as a bitmask, so containment check is O(1) and
+ * union or difference of two sets is a handful of bit operations.
+ *
+ * Iteration order is the order in which permissions were interned.
+ */
+public final class PermissionSet implements Iterable<String> {
+
+    private static final ConcurrentHashMap<String, Integer> sIds = new ConcurrentHashMap<>();
+    private static volatile String[] sNames = new String[64];
+    private static int sNextId = 0;
+
+    private static final long[] NO_WORDS = new long[0];
+
+    public static final PermissionSet EMPTY = new PermissionSet(NO_WORDS);
+
+    private final long[] mWords;
+    private final int mSize;
+
+    /**
+     * Create set from a bitmask. Bitmask is not copied.
+     *
+     * @param words Bitmask indexed by permission id
+     */
+    PermissionSet(long[] words) {
+        int length = words.length;
+        while(length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        mWords = length == words.length ? words : Arrays.copyOf(words, length);
+        int size = 0;
+        for(long word : mWords) {
+            size += Long.bitCount(word);
+        }
+        mSize = size;
+    }
+
+    public static PermissionSet of(String... permissions) {
+        if(permissions.length == 0) {
+            return EMPTY;
+        }
+        long[] words = NO_WORDS;
+        for(String permission : permissions) {
+            words = set(words, intern(permission));
+        }
+        return new PermissionSet(words);
+    }
+
+    public static PermissionSet of(Collection<String> permissions) {
+        if(permissions.isEmpty()) {
+            return EMPTY;
+        }
+        long[] words = NO_WORDS;
+        for(String permission : permissions) {
+            words = set(words, intern(permission));
+        }
+        return new PermissionSet(words);
+    }
+
+    /**
+     * Get process-wide id of a permission, assigning new one if needed.
+     *
+     * @param permission Permission name
+     * @return Permission id
+     */
+    static int intern(String permission) {
+        if(permission == null) {
+            throw new IllegalArgumentException("Permission cannot be null");
+        }
+        Integer id = sIds.get(permission);
+        if(id != null) {
+            return id;
+        }
+        synchronized (PermissionSet.class) {
+            id = sIds.get(permission);
+            if(id != null) {
+                return id;
+            }
+            int newId = sNextId++;
+            String[] names = sNames;
+            if(newId >= names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[newId] = permission;
+            sNames = names;
+            sIds.put(permission, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Get process-wide id of a permission without interning it.
+     *
+     * @param permission Permission name
+     * @return Permission id or -1, if permission has not been interned yet
+     */
+    static int idOf(String permission) {
+        if(permission == null) {
+            return -1;
+        }
+        Integer id = sIds.get(permission);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Get permission name by process-wide id.
+     *
+     * @param id Permission id
+     * @return Permission name
+     */
+    static String nameOf(int id) {
+        return sNames[id];
+    }
+
+    private static long[] set(long[] words, int id) {
+        int index = id >>> 6;
+        if(index >= words.length) {
+            words = Arrays.copyOf(words, index + 1);
+        }
+        words[index] |= 1L << id;
+        return words;
+    }
+
+    public boolean contains(String permission) {
+        return contains(idOf(permission));
+    }
+
+    boolean contains(int id) {
+        if(id < 0) {
+            return false;
+        }
+        int index = id >>> 6;
+        return index < mWords.length && (mWords[index] & (1L << id)) != 0;
+    }
+
+    public boolean containsAll(PermissionSet other) {
+        if(other.mWords.length > mWords.length) {
+            return false;
+        }
+        for(int i = 0; i < other.mWords.length; i++) {
+            if((other.mWords[i] & ~mWords[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean containsAny(PermissionSet other) {
+        int length = Math.min(mWords.length, other.mWords.length);
+        for(int i = 0; i < length; i++) {
+            if((other.mWords[i] & mWords[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public PermissionSet union(PermissionSet other) {
+        if(containsAll(other)) {
+            return this;
+        }
+        if(other.containsAll(this)) {
+            return other;
+        }
+        long[] words = Arrays.copyOf(mWords, Math.max(mWords.length, other.mWords.length));
+        for(int i = 0; i < other.mWords.length; i++) {
+            words[i] |= other.mWords[i];
+        }
+        return new PermissionSet(words);
+    }
+
+    public PermissionSet difference(PermissionSet other) {
+        if(!containsAny(other)) {
+            return this;
+        }
+        long[] words = Arrays.copyOf(mWords, mWords.length);
+        int length = Math.min(mWords.length, other.mWords.length);
+        for(int i = 0; i < length; i++) {
+            words[i] &= ~other.mWords[i];
+        }
+        return new PermissionSet(words);
+    }
+
+    public PermissionSet intersection(PermissionSet other) {
+        if(other.containsAll(this)) {
+            return this;
+        }
+        if(containsAll(other)) {
+            return other;
+        }
+        long[] words = new long[Math.min(mWords.length, other.mWords.length)];
+        for(int i = 0; i < words.length; i++) {
+            words[i] = mWords[i] & other.mWords[i];
+        }
+        return new PermissionSet(words);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Get next permission id in this set. Use it to iterate set without
+     * allocating an iterator:
+     *
+     * <pre>
+     * for(int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) { ... }
+     * </pre>
+     *
+     * @param fromId First id to consider
+     * @return Smallest id greater or equal to fromId or -1, if there are no more ids
+     */
+    int nextId(int fromId) {
+        int index = fromId >>> 6;
+        if(index >= mWords.length) {
+            return -1;
+        }
+        long word = mWords[index] & (-1L << fromId);
+        while(true) {
+            if(word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if(++index == mWords.length) {
+                return -1;
+            }
+            word = mWords[index];
+        }
+    }
+
+    /**
+     * Number of bitmask words needed to hold every permission id of this set.
+     */
+    int wordCount() {
+        return mWords.length;
+    }
+
+    /**
+     * Copy bitmask into provided buffer. Buffer must hold at least {@link #wordCount()} words;
+     * remaining words are cleared.
+     *
+     * @param words Destination buffer
+     */
+    void copyWordsTo(long[] words) {
+        System.arraycopy(mWords, 0, words, 0, mWords.length);
+        Arrays.fill(words, mWords.length, words.length, 0L);
+    }
+
+    /**
+     * Check if this set is represented by provided bitmask.
+     *
+     * @param words Bitmask indexed by permission id
+     * @return true if bitmask holds exactly permissions of this set
+     */
+    boolean hasWords(long[] words) {
+        for(int i = 0; i < words.length; i++) {
+            long word = i < mWords.length ? mWords[i] : 0L;
+            if(word != words[i]) {
+                return false;
+            }
+        }
+        return words.length >= mWords.length;
+    }
+
+    public String[] toArray() {
+        String[] permissions = new String[mSize];
+        int i = 0;
+        for(int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            permissions[i++] = nameOf(id);
+        }
+        return permissions;
+    }
+
+    /**
+     * @return Unmodifiable list of permissions
+     */
+    public List<String> asList() {
+        return Collections.unmodifiableList(Arrays.asList(toArray()));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int mNextId = nextId(0);
+
+            @Override
+            public boolean hasNext() {
+                return mNextId >= 0;
+            }
+
+            @Override
+            public String next() {
+                if(mNextId < 0) {
+                    throw new NoSuchElementException();
+                }
+                String permission = nameOf(mNextId);
+                mNextId = nextId(mNextId + 1);
+                return permission;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Permission set is immutable");
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(mWords, ((PermissionSet) o).mWords);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mWords);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Immutable grant state of a set of permissions, captured at once.
+ */
+public final class PermissionSnapshot {
+
+    private final PermissionSet mPermissions;
+    private final PermissionSet mGranted;
+
+    PermissionSnapshot(PermissionSet permissions, PermissionSet granted) {
+        mPermissions = permissions;
+        mGranted = granted;
+    }
+
+    /**
+     * Check grant state of all permissions in one pass.
+     *
+     * @param permissions Set of permissions to check
+     * @param checker Permission checker used to query grant state
+     * @return Snapshot of permissions grant state
+     */
+    public static PermissionSnapshot check(PermissionSet permissions, PermissionChecker checker) {
+        long[] granted = new long[permissions.wordCount()];
+        for(int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if(checker.isGranted(PermissionSet.nameOf(id))) {
+                granted[id >>> 6] |= 1L << id;
+            }
+        }
+        return new PermissionSnapshot(permissions, new PermissionSet(granted));
+    }
+
+    /**
+     * @return All checked permissions
+     */
+    public PermissionSet getPermissions() {
+        return mPermissions;
+    }
+
+    /**
+     * @return Granted permissions
+     */
+    public PermissionSet getGranted() {
+        return mGranted;
+    }
+
+    /**
+     * @return Permissions that are not granted
+     */
+    public PermissionSet getDenied() {
+        return mPermissions.difference(mGranted);
+    }
+
+    /**
+     * @param permission Permission to check
+     * @return true if permission was checked and it is granted
+     */
+    public boolean isGranted(String permission) {
+        return mGranted.contains(permission);
+    }
+
+    /**
+     * @return true if all checked permissions are granted
+     */
+    public boolean isAllGranted() {
+        return mGranted.size() == mPermissions.size();
+    }
+
+    /**
+     * @return true if any checked permission is granted
+     */
+    public boolean isAnyGranted() {
+        return !mGranted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "granted: " + mGranted + ", denied: " + getDenied();
+    }
+}
@@ -0,0 +1,66 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cheap proof that permissions were granted. Token is handed out when
+ * flow enters granted state and stays valid until the flow detects that
+ * permissions are no longer granted, ex. on failed check or on resume
+ * revalidation. Validity check is a single volatile read, so it can be
+ * used in tight loops, like camera frame callbacks, on any thread.
+ *
+ * Token does not reference the flow, so it can outlive the screen that
+ * issued it; it simply becomes invalid.
+ */
+public final class PermissionToken {
+
+    private final PermissionSet mPermissions;
+    private final AtomicInteger mCurrentEpoch;
+    private final int mEpoch;
+
+    PermissionToken(PermissionSet permissions, AtomicInteger currentEpoch, int epoch) {
+        mPermissions = permissions;
+        mCurrentEpoch = currentEpoch;
+        mEpoch = epoch;
+    }
+
+    /**
+     * @return true if permissions have not been revoked since this token was issued
+     */
+    public boolean isValid() {
+        return mCurrentEpoch.get() == mEpoch;
+    }
+
+    /**
+     * @return Grant epoch of this token; it changes every time permissions are revoked
+     */
+    public int getEpoch() {
+        return mEpoch;
+    }
+
+    /**
+     * @return Permissions covered by this token
+     */
+    public PermissionSet getPermissions() {
+        return mPermissions;
+    }
+
+    @Override
+    public String toString() {
+        return "epoch " + mEpoch + (isValid() ? ", valid: " : ", invalid: ") + mPermissions;
+    }
+}
@@ -0,0 +1,192 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide trace of the last {@link #CAPACITY} state machine transitions.
+ *
+ * Transitions are recorded as packed primitives in a preallocated ring buffer,
+ * so recording does not allocate. Entries are decoded only when trace is dumped,
+ * ex. when attaching it to a crash report.
+ *
+ * Every entry contains wall-clock time, helper id (request code), event,
+ * source and target states and values of guards evaluated to select the transition.
+ *
+ * Trace is disabled by default; state machines in debug mode record transitions anyway.
+ */
+public final class TransitionTrace {
+
+    public static final int CAPACITY = 128;
+
+    private static final long ID_MASK = 0xffffffffL;
+    private static final int EVENT_SHIFT = 32;
+    private static final int FROM_SHIFT = 36;
+    private static final int TO_SHIFT = 40;
+    private static final int KNOWN_SHIFT = 44;
+    private static final int VALUES_SHIFT = 48;
+    private static final long ORDINAL_MASK = 0xf;
+    private static final long CONDITIONS_MASK = Fsm.ALL_CONDITIONS;
+
+    /**
+     * Both slots of an entry are tagged with the lap of the ring buffer they
+     * were written in. Entry is decoded only if both tags match its lap, so
+     * entries torn by racing writers or not written yet are skipped.
+     */
+    private static final int LAP_SHIFT = 52;
+    private static final long LAP_MASK = 0xfff;
+    private static final long PAYLOAD_MASK = (1L << LAP_SHIFT) - 1;
+
+    private static final Fsm.State[] STATES = Fsm.State.values();
+    private static final Fsm.Event[] EVENTS = Fsm.Event.values();
+
+    /**
+     * Two slots per entry: timestamp and packed transition.
+     */
+    private static final AtomicLongArray sBuffer = new AtomicLongArray(CAPACITY * 2);
+    private static final AtomicLong sNextSequence = new AtomicLong();
+    private static volatile boolean sEnabled = false;
+
+    private TransitionTrace() {}
+
+    /**
+     * Enable or disable recording. Trace is disabled by default. State machines in
+     * debug mode record transitions even if trace is disabled.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Pack transition into a single value.
+     *
+     * @param known Conditions evaluated to select transition
+     * @param values Values of evaluated conditions
+     * @return Packed transition
+     */
+    static long pack(int id, Fsm.Event event, Fsm.State from, Fsm.State to, int known, int values) {
+        return (id & ID_MASK)
+                | (long) event.ordinal() << EVENT_SHIFT
+                | (long) from.ordinal() << FROM_SHIFT
+                | (long) to.ordinal() << TO_SHIFT
+                | (known & CONDITIONS_MASK) << KNOWN_SHIFT
+                | (values & known & CONDITIONS_MASK) << VALUES_SHIFT;
+    }
+
+    /**
+     * Record transition.
+     *
+     * @param timestamp Wall-clock time in milliseconds
+     * @param transition Transition packed by {@link #pack(int, Fsm.Event, Fsm.State, Fsm.State, int, int)}
+     * @return Sequence number of recorded entry
+     */
+    static long record(long timestamp, long transition) {
+        final long sequence = sNextSequence.getAndIncrement();
+        final int index = (int) (sequence % CAPACITY) * 2;
+        final long lap = lapOf(sequence);
+        sBuffer.set(index, timestamp & PAYLOAD_MASK | lap);
+        sBuffer.set(index + 1, transition & PAYLOAD_MASK | lap);
+        return sequence;
+    }
+
+    /**
+     * Decode single entry.
+     *
+     * @param sequence Sequence number returned by {@link #record(long, long)}
+     * @return Decoded entry or null, if entry has been overwritten or is being written
+     */
+    static String format(long sequence) {
+        final long next = sNextSequence.get();
+        if(sequence < 0 || sequence >= next || next - sequence > CAPACITY) {
+            return null;
+        }
+        return formatEntry(sequence);
+    }
+
+    /**
+     * Decode trace, oldest entry first.
+     *
+     * @return Trace with one transition per line
+     */
+    public static String dump() {
+        final long next = sNextSequence.get();
+        final StringBuilder builder = new StringBuilder();
+        for(long sequence = Math.max(0, next - CAPACITY); sequence < next; sequence++) {
+            final String entry = formatEntry(sequence);
+            if(entry != null) {
+                builder.append(entry).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Clear trace.
+     */
+    public static void clear() {
+        sNextSequence.set(0);
+    }
+
+    private static long lapOf(long sequence) {
+        return (sequence / CAPACITY & LAP_MASK) << LAP_SHIFT;
+    }
+
+    private static String formatEntry(long sequence) {
+        final int index = (int) (sequence % CAPACITY) * 2;
+        final long lap = lapOf(sequence);
+        final long timestamp = sBuffer.get(index);
+        final long transition = sBuffer.get(index + 1);
+        if((timestamp & ~PAYLOAD_MASK) != lap || (transition & ~PAYLOAD_MASK) != lap) {
+            return null;
+        }
+        return format(timestamp & PAYLOAD_MASK, transition & PAYLOAD_MASK);
+    }
+
+    /**
+     * Decode transition.
+     *
+     * @param timestamp Wall-clock time in milliseconds
+     * @param transition Transition packed by {@link #pack(int, Fsm.Event, Fsm.State, Fsm.State, int, int)}
+     * @return Decoded transition
+     */
+    static String format(long timestamp, long transition) {
+        final int id = (int) (transition & ID_MASK);
+        final Fsm.Event event = EVENTS[(int) (transition >>> EVENT_SHIFT & ORDINAL_MASK)];
+        final Fsm.State from = STATES[(int) (transition >>> FROM_SHIFT & ORDINAL_MASK)];
+        final Fsm.State to = STATES[(int) (transition >>> TO_SHIFT & ORDINAL_MASK)];
+        final int known = (int) (transition >>> KNOWN_SHIFT & CONDITIONS_MASK);
+        final int values = (int) (transition >>> VALUES_SHIFT & CONDITIONS_MASK);
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%tT.%<tL #%d %s: %s -> %s", timestamp, id, event, from, to));
+        appendCondition(builder, "isGranted", Fsm.IS_GRANTED, known, values);
+        appendCondition(builder, "canShowRationale", Fsm.CAN_SHOW_RATIONALE, known, values);
+        appendCondition(builder, "isRationaleModal", Fsm.IS_RATIONALE_MODAL, known, values);
+        appendCondition(builder, "wasDenied", Fsm.WAS_DENIED, known, values);
+        return builder.toString();
+    }
+
+    private static void appendCondition(StringBuilder builder, String name, int condition, int known, int values) {
+        if((known & condition) != 0) {
+            builder.append(' ').append(name).append('=').append((values & condition) != 0);
+        }
+    }
+}
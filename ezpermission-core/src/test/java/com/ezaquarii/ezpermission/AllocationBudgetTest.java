@@ -0,0 +1,260 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes allocated per operation on steady-state paths, measured with thread
+ * allocation counter. Operation that exceeds its budget fails the build.
+ *
+ * Every operation restores its start state, so it can be repeated; state
+ * restoration does not allocate.
+ */
+public class AllocationBudgetTest {
+
+    private static final int REQUEST_CODE = 42;
+    private static final String PERMISSION_A = "permission_alloc_a";
+    private static final String PERMISSION_B = "permission_alloc_b";
+    private static final String[] PERMISSIONS = new String[] {PERMISSION_A, PERMISSION_B};
+    private static final int[] ALL_GRANTED = new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_GRANTED};
+    private static final int[] ALL_DENIED = new int[] {PermissionFlow.PERMISSION_DENIED, PermissionFlow.PERMISSION_DENIED};
+
+    private static final int WARMUP_OPERATIONS = 50000;
+    private static final int MEASURED_OPERATIONS = 100000;
+
+    /**
+     * Allowance for the allocation counter itself, per measurement.
+     */
+    private static final long MEASUREMENT_SLACK_BYTES = 4096;
+
+    private static final long BUDGET_CALL_GRANTED = 0;
+    private static final long BUDGET_CALL_DENIED = 0;
+    private static final long BUDGET_RESULT_DENIED = 0;
+    private static final long BUDGET_REJECT_RATIONALE = 0;
+
+    /**
+     * Every grant issues a new {@link PermissionToken}.
+     */
+    private static final long BUDGET_RESULT_GRANTED = 32;
+
+    private static class FixedPlatform implements PermissionPlatform {
+
+        boolean granted = false;
+        boolean rationale = false;
+
+        @Override
+        public boolean isGranted(String permission) {
+            return granted;
+        }
+
+        @Override
+        public boolean shouldShowRationale(String permission) {
+            return rationale;
+        }
+
+        @Override
+        public void requestPermissions(String[] permissions, int requestCode) {
+        }
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private com.sun.management.ThreadMXBean mThreadBean;
+    private FixedPlatform mPlatform;
+    private boolean mWasTraceEnabled;
+
+    @Before
+    public void setUp() {
+        mWasTraceEnabled = TransitionTrace.isEnabled();
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+        mPlatform = new FixedPlatform();
+    }
+
+    @After
+    public void tearDown() {
+        TransitionTrace.setEnabled(mWasTraceEnabled);
+    }
+
+    private PermissionFlow createFlow(Callable<Boolean> isPermissionGranted) {
+        return new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, true,
+                                  NOTHING, NOTHING, NOTHING, NOTHING, NOTHING, NOTHING,
+                                  null, true, isPermissionGranted, true);
+    }
+
+    @Test
+    public void callInGranted() {
+        mPlatform.granted = true;
+        final PermissionFlow flow = createFlow(null);
+        flow.call();
+        assertEquals(Fsm.State.GRANTED, flow.getCurrentState());
+        assertBudget("call() in GRANTED", BUDGET_CALL_GRANTED, new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+        assertEquals(Fsm.State.GRANTED, flow.getCurrentState());
+    }
+
+    @Test
+    public void callInGrantedWithCustomGuard() {
+        final PermissionFlow flow = createFlow(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return true;
+            }
+        });
+        flow.call();
+        assertEquals(Fsm.State.GRANTED, flow.getCurrentState());
+        assertBudget("call() in GRANTED with custom guard", BUDGET_CALL_GRANTED, new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+    }
+
+    @Test
+    public void callInGrantedWithTrace() {
+        mPlatform.granted = true;
+        final PermissionFlow flow = createFlow(null);
+        flow.call();
+        TransitionTrace.setEnabled(true);
+        assertBudget("call() in GRANTED with transition trace", BUDGET_CALL_GRANTED, new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+    }
+
+    @Test
+    public void callInGrantedConcurrent() {
+        mPlatform.granted = true;
+        final PermissionFlow flow = createFlow(null);
+        flow.setConcurrent(true);
+        flow.call();
+        assertBudget("call() in GRANTED in concurrent mode", BUDGET_CALL_GRANTED, new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+    }
+
+    @Test
+    public void callInDenied() {
+        final PermissionFlow flow = createFlow(null);
+        flow.call();
+        flow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, ALL_DENIED);
+        assertEquals(Fsm.State.DENIED, flow.getCurrentState());
+        assertBudget("call() in DENIED", BUDGET_CALL_DENIED, new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+        assertEquals(Fsm.State.DENIED, flow.getCurrentState());
+    }
+
+    @Test
+    public void grantedResult() {
+        final PermissionFlow flow = createFlow(null);
+        flow.call();
+        assertEquals(Fsm.State.REQUESTING, flow.getCurrentState());
+        assertBudget("onRequestPermissionsResult() granted", BUDGET_RESULT_GRANTED, new Runnable() {
+            @Override
+            public void run() {
+                flow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, ALL_GRANTED);
+                flow.setCurrentState(Fsm.State.REQUESTING);
+            }
+        });
+    }
+
+    @Test
+    public void deniedResult() {
+        final PermissionFlow flow = createFlow(null);
+        flow.call();
+        assertEquals(Fsm.State.REQUESTING, flow.getCurrentState());
+        assertBudget("onRequestPermissionsResult() denied", BUDGET_RESULT_DENIED, new Runnable() {
+            @Override
+            public void run() {
+                flow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, ALL_DENIED);
+                flow.setCurrentState(Fsm.State.REQUESTING);
+            }
+        });
+    }
+
+    @Test
+    public void rejectRationale() {
+        mPlatform.rationale = true;
+        final PermissionFlow flow = createFlow(null);
+        flow.setCurrentState(Fsm.State.RATIONALE);
+        assertBudget("rejectRationale()", BUDGET_REJECT_RATIONALE, new Runnable() {
+            @Override
+            public void run() {
+                flow.rejectRationale();
+                flow.setCurrentState(Fsm.State.RATIONALE);
+            }
+        });
+    }
+
+    @Test
+    public void allocationIsDetected() {
+        final Object[] sink = new Object[1];
+        try {
+            assertBudget("allocating operation", 0, new Runnable() {
+                @Override
+                public void run() {
+                    sink[0] = new long[4];
+                }
+            });
+        } catch(AssertionError e) {
+            return;
+        }
+        fail("Allocation has not been detected");
+    }
+
+    private void assertBudget(String operation, long budgetBytes, Runnable runnable) {
+        for(int i = 0; i < WARMUP_OPERATIONS; i++) {
+            runnable.run();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = mThreadBean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < MEASURED_OPERATIONS; i++) {
+            runnable.run();
+        }
+        final long allocated = mThreadBean.getThreadAllocatedBytes(threadId) - before;
+        final long limit = budgetBytes * MEASURED_OPERATIONS + MEASUREMENT_SLACK_BYTES;
+        assertTrue(operation + " allocated " + (double) allocated / MEASURED_OPERATIONS + " bytes per operation, budget is " + budgetBytes,
+                   allocated <= limit);
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Concurrent mode hammered with calls and results from many threads.
+ */
+public class ConcurrentFlowStressTest {
+
+    private static final int REQUEST_CODE = 42;
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+    private static final String[] PERMISSIONS = new String[] {PERMISSION_A, PERMISSION_B};
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+
+    private static class DeniedPlatform implements PermissionPlatform {
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public boolean isGranted(String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean shouldShowRationale(String permission) {
+            return false;
+        }
+
+        @Override
+        public void requestPermissions(String[] permissions, int requestCode) {
+            requests.incrementAndGet();
+        }
+    }
+
+    private static class AtomicCounter implements Runnable {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void run() {
+            count.incrementAndGet();
+        }
+    }
+
+    private static PermissionFlow createFlow(PermissionPlatform platform, Runnable onCancelled) {
+        PermissionFlow flow = new PermissionFlow(platform, REQUEST_CODE, PERMISSIONS, true,
+                                                 null, null, null, null, onCancelled, null,
+                                                 null, true, null, true);
+        flow.setConcurrent(true);
+        return flow;
+    }
+
+    /**
+     * Run every task on its own thread, all released at once.
+     */
+    private static void hammer(List<Runnable> tasks) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for(final Runnable task : tasks) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        task.run();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        if(failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void everyRequestIsLeftExactlyOnce() throws InterruptedException {
+        final DeniedPlatform platform = new DeniedPlatform();
+        final AtomicCounter onCancelled = new AtomicCounter();
+        final PermissionFlow flow = createFlow(platform, onCancelled);
+
+        List<Runnable> tasks = new ArrayList<>();
+        for(int i = 0; i < THREADS; i++) {
+            if(i % 2 == 0) {
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        for(int j = 0; j < ITERATIONS; j++) {
+                            flow.call();
+                        }
+                    }
+                });
+            } else {
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        for(int j = 0; j < ITERATIONS; j++) {
+                            flow.onRequestPermissionsResult(REQUEST_CODE, new String[0], new int[0]);
+                        }
+                    }
+                });
+            }
+        }
+        hammer(tasks);
+
+        // every entry to requesting state is matched by at most one cancellation
+        int pending = flow.getCurrentState() == Fsm.State.REQUESTING ? 1 : 0;
+        assertEquals(platform.requests.get() - pending, onCancelled.count.get());
+        assertTrue(platform.requests.get() > 0);
+    }
+
+    @Test
+    public void deniedPermissionsAreNeverTorn() throws InterruptedException {
+        final PermissionFlow flow = createFlow(new DeniedPlatform(), null);
+        final int[] onlyA = new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED};
+        final int[] onlyB = new int[] {PermissionFlow.PERMISSION_DENIED, PermissionFlow.PERMISSION_GRANTED};
+        flow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, onlyA);
+
+        List<Runnable> tasks = new ArrayList<>();
+        for(int i = 0; i < THREADS; i++) {
+            final int[] results = i % 2 == 0 ? onlyA : onlyB;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < ITERATIONS; j++) {
+                        flow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, results);
+                        assertEquals(1, flow.getDeniedPermissionSet().size());
+                        assertEquals(1, flow.getDeniedPermissions().size());
+                    }
+                }
+            });
+        }
+        hammer(tasks);
+    }
+
+    /**
+     * Platform whose grant check blocks in one chosen thread until released,
+     * so other thread can apply transition while the event is being selected.
+     */
+    private static class StallingPlatform extends DeniedPlatform {
+
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile Thread stalledThread;
+
+        @Override
+        public boolean isGranted(String permission) {
+            if(Thread.currentThread() == stalledThread && stalled.getCount() > 0) {
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Interleave two calls: first call is stalled while evaluating guards,
+     * second call completes in the meantime.
+     *
+     * @return Number of permission requests
+     */
+    private static int requestsOfInterleavedCalls(boolean concurrent) throws InterruptedException {
+        final StallingPlatform platform = new StallingPlatform();
+        final PermissionFlow flow = createFlow(platform, null);
+        flow.setConcurrent(concurrent);
+        Thread stalled = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flow.call();
+            }
+        });
+        platform.stalledThread = stalled;
+        stalled.start();
+        platform.stalled.await();
+        flow.call();
+        platform.release.countDown();
+        stalled.join();
+        assertEquals(Fsm.State.REQUESTING, flow.getCurrentState());
+        return platform.requests.get();
+    }
+
+    @Test
+    public void staleTransitionIsAppliedTwiceWithoutConcurrentMode() throws InterruptedException {
+        assertEquals(2, requestsOfInterleavedCalls(false));
+    }
+
+    @Test
+    public void staleTransitionIsDiscardedInConcurrentMode() throws InterruptedException {
+        assertEquals(1, requestsOfInterleavedCalls(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void concurrentModeCannotBeAsync() {
+        PermissionFlow flow = createFlow(new DeniedPlatform(), null);
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        flow.setAsync(direct, direct);
+    }
+}
@@ -0,0 +1,204 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EzPermissionMetricsTest {
+
+    private static final PermissionSet PERMISSIONS = PermissionSet.of("permission_a", "permission_b");
+
+    private final List<String> mTransitions = new ArrayList<>();
+    private final List<EzPermissionMetrics.Guard> mGuards = new ArrayList<>();
+    private final List<Boolean> mRequests = new ArrayList<>();
+
+    private final EzPermissionMetrics.Listener mListener = new EzPermissionMetrics.Listener() {
+        @Override
+        public void onTransition(PermissionSet permissions, Fsm.Event event, Fsm.State from, Fsm.State to) {
+            assertSame(PERMISSIONS, permissions);
+            mTransitions.add(from + "-" + event + "->" + to);
+        }
+
+        @Override
+        public void onGuardEvaluated(PermissionSet permissions, EzPermissionMetrics.Guard guard, boolean value, long durationNanos) {
+            assertTrue(durationNanos >= 0);
+            mGuards.add(guard);
+        }
+
+        @Override
+        public void onRequestCompleted(PermissionSet permissions, boolean isGranted, long latencyNanos) {
+            assertTrue(latencyNanos >= 0);
+            mRequests.add(isGranted);
+        }
+    };
+
+    private static Fsm createFsm(final int values) {
+        Fsm.Conditions conditions = new Fsm.Conditions() {
+            @Override
+            public boolean evaluate(int condition) throws Exception {
+                return (values & condition) != 0;
+            }
+        };
+        return new Fsm(PERMISSIONS, conditions, Fsm.ALL_CONDITIONS, null, null, null, null, null, null);
+    }
+
+    @Before
+    public void setUp() {
+        EzPermissionMetrics.reset();
+        EzPermissionMetrics.enable(mListener);
+    }
+
+    @After
+    public void tearDown() {
+        EzPermissionMetrics.disable();
+        EzPermissionMetrics.reset();
+    }
+
+    @Test
+    public void transitionsAndGuardsAreReported() {
+        Fsm fsm = createFsm(Fsm.IS_RATIONALE_MODAL);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.GRANTED);
+        assertEquals(2, mTransitions.size());
+        assertEquals("START-DISPATCH->REQUESTING", mTransitions.get(0));
+        assertEquals("REQUESTING-GRANTED->GRANTED", mTransitions.get(1));
+        assertEquals(EzPermissionMetrics.Guard.IS_GRANTED, mGuards.get(0));
+        assertEquals(EzPermissionMetrics.Guard.CAN_SHOW_RATIONALE, mGuards.get(1));
+        assertEquals(1, mRequests.size());
+        assertTrue(mRequests.get(0));
+    }
+
+    @Test
+    public void funnelIsCounted() {
+        Fsm fsm = createFsm(Fsm.CAN_SHOW_RATIONALE | Fsm.IS_RATIONALE_MODAL);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.REJECT);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.DENIED);
+
+        EzPermissionMetrics.Counters counters = EzPermissionMetrics.snapshot().get(PERMISSIONS);
+        assertEquals(2, counters.get(EzPermissionMetrics.Counter.RATIONALE_SHOWN));
+        assertEquals(1, counters.get(EzPermissionMetrics.Counter.RATIONALE_ACCEPTED));
+        assertEquals(1, counters.get(EzPermissionMetrics.Counter.DENIED));
+        assertEquals(0, counters.get(EzPermissionMetrics.Counter.GRANTED));
+        assertEquals(1, mRequests.size());
+        assertFalse(mRequests.get(0));
+    }
+
+    private static PermissionFlow createFlow(boolean isRationaleModal) {
+        PermissionPlatform platform = new PermissionPlatform() {
+            @Override
+            public boolean isGranted(String permission) {
+                return false;
+            }
+
+            @Override
+            public boolean shouldShowRationale(String permission) {
+                return true;
+            }
+
+            @Override
+            public void requestPermissions(String[] permissions, int requestCode) {
+            }
+        };
+        Runnable onRationale = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        return new PermissionFlow(platform, 1, PERMISSIONS.toArray(), isRationaleModal,
+                                  null, onRationale, null, null,
+                                  null, null, null, true, null, true);
+    }
+
+    @Test
+    public void rejectionIsCountedLikeOutcome() {
+        EzPermissionMetrics.enable(null);
+        final List<PermissionOutcome> outcomes = new ArrayList<>();
+        PermissionOutcomeListener listener = new PermissionOutcomeListener() {
+            @Override
+            public void onOutcome(PermissionOutcome outcome) {
+                outcomes.add(outcome);
+            }
+        };
+
+        PermissionFlow modal = createFlow(true);
+        modal.addOutcomeListener(listener);
+        modal.call();
+        modal.rejectRationale();
+        modal.rejectRationale();
+
+        PermissionFlow modeless = createFlow(false);
+        modeless.addOutcomeListener(listener);
+        modeless.rejectRationale();
+        assertEquals(Fsm.State.RATIONALE, modeless.getCurrentState());
+
+        assertEquals(2, outcomes.size());
+        assertEquals(2, EzPermissionMetrics.snapshot().get(PERMISSIONS).get(EzPermissionMetrics.Counter.RATIONALE_REJECTED));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() {
+        EzPermissionMetrics.disable();
+        Fsm fsm = createFsm(Fsm.IS_GRANTED);
+        fsm.event(Fsm.Event.DISPATCH);
+        assertTrue(mTransitions.isEmpty());
+        assertTrue(mGuards.isEmpty());
+        assertTrue(EzPermissionMetrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void denialFromHistoryIsCountedAsPermanent() {
+        Fsm fsm = createFsm(Fsm.WAS_DENIED | Fsm.IS_RATIONALE_MODAL);
+        fsm.event(Fsm.Event.DISPATCH);
+        assertEquals(Fsm.State.DENIED, fsm.getCurrentState());
+
+        EzPermissionMetrics.Counters counters = EzPermissionMetrics.snapshot().get(PERMISSIONS);
+        assertEquals(1, counters.get(EzPermissionMetrics.Counter.DENIED_PERMANENTLY));
+        assertTrue(mRequests.isEmpty());
+    }
+
+    @Test
+    public void nonModalDenialFromHistoryIsCountedAsPermanent() {
+        Fsm fsm = createFsm(Fsm.WAS_DENIED);
+        fsm.start();
+        fsm.event(Fsm.Event.DISPATCH);
+        assertEquals(Fsm.State.DENIED, fsm.getCurrentState());
+
+        EzPermissionMetrics.Counters counters = EzPermissionMetrics.snapshot().get(PERMISSIONS);
+        assertEquals(1, counters.get(EzPermissionMetrics.Counter.DENIED_PERMANENTLY));
+        assertEquals(0, counters.get(EzPermissionMetrics.Counter.RATIONALE_ACCEPTED));
+        assertTrue(mRequests.isEmpty());
+    }
+
+    @Test
+    public void requestLatencyIsReportedInConcurrentMode() {
+        Fsm fsm = createFsm(Fsm.IS_RATIONALE_MODAL);
+        fsm.setConcurrent(true);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.GRANTED);
+        fsm.event(Fsm.Event.DISPATCH);
+        assertEquals(1, mRequests.size());
+        assertTrue(mRequests.get(0));
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiled dispatch table must select exactly the same transition
+ * as linear scan of the transition table, for every state, event
+ * and combination of guard values.
+ */
+public class FsmDispatchTest {
+
+    private static Fsm.Conditions constant(final int values) {
+        return new Fsm.Conditions() {
+            @Override
+            public boolean evaluate(int condition) throws Exception {
+                return (values & condition) != 0;
+            }
+        };
+    }
+
+    private static Fsm createFsm(int conditions) {
+        return new Fsm(null, constant(conditions), Fsm.ALL_CONDITIONS, null, null, null, null, null, null);
+    }
+
+    @Test
+    public void compiledDispatchMatchesLinearScan() {
+        for(int guards = 0; guards <= Fsm.ALL_CONDITIONS; guards++) {
+            Fsm fsm = createFsm(guards);
+            for(Fsm.State state : Fsm.State.values()) {
+                for(Fsm.Event event : Fsm.Event.values()) {
+                    String msg = String.format("guards: %d, state: %s, event: %s", guards, state, event);
+                    assertSame(msg, fsm.findRowLinear(state, event), fsm.findRow(state, event));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void eventAppliesSelectedTransition() {
+        for(int guards = 0; guards <= Fsm.ALL_CONDITIONS; guards++) {
+            Fsm fsm = createFsm(guards);
+            for(Fsm.State state : Fsm.State.values()) {
+                for(Fsm.Event event : Fsm.Event.values()) {
+                    Fsm.Row row = fsm.findRowLinear(state, event);
+                    Fsm.State expected = row != null ? row.to : state;
+                    fsm.setCurrentState(state);
+                    fsm.event(event);
+                    String msg = String.format("guards: %d, state: %s, event: %s", guards, state, event);
+                    assertEquals(msg, expected, fsm.getCurrentState());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transitionActionRunsBeforeEntryCallback() {
+        final StringBuilder trace = new StringBuilder();
+        Runnable onDenied = new Runnable() {
+            @Override
+            public void run() {
+                trace.append("denied;");
+            }
+        };
+        Runnable onRationale = new Runnable() {
+            @Override
+            public void run() {
+                trace.append("rationale;");
+            }
+        };
+        Fsm fsm = new Fsm(null,
+                          constant(Fsm.CAN_SHOW_RATIONALE),
+                          Fsm.ALL_CONDITIONS,
+                          null, onRationale, null, onDenied, null, null);
+        fsm.setCurrentState(Fsm.State.REQUESTING);
+        fsm.event(Fsm.Event.DENIED);
+        assertEquals(Fsm.State.RATIONALE, fsm.getCurrentState());
+        assertEquals("denied;rationale;", trace.toString());
+    }
+}
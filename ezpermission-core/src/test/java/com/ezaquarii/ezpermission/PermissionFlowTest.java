@@ -0,0 +1,605 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Permission flow driven by a fake platform on a plain JVM.
+ */
+public class PermissionFlowTest {
+
+    private static final int REQUEST_CODE = 42;
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+    private static final String[] PERMISSIONS = new String[] {PERMISSION_A, PERMISSION_B};
+
+    private static class FakePlatform implements PermissionPlatform {
+
+        final Set<String> granted = new HashSet<>();
+        final Set<String> rationale = new HashSet<>();
+        final List<String> rationaleChecks = new ArrayList<>();
+        String[] lastRequest = null;
+        int requests = 0;
+
+        @Override
+        public boolean isGranted(String permission) {
+            return granted.contains(permission);
+        }
+
+        @Override
+        public boolean shouldShowRationale(String permission) {
+            rationaleChecks.add(permission);
+            return rationale.contains(permission);
+        }
+
+        @Override
+        public void requestPermissions(String[] permissions, int requestCode) {
+            assertEquals(REQUEST_CODE, requestCode);
+            lastRequest = permissions;
+            requests++;
+        }
+    }
+
+    private static class Counter implements Runnable {
+
+        int count = 0;
+
+        @Override
+        public void run() {
+            count++;
+        }
+    }
+
+    private static class FakeHistory implements PermissionHistory {
+
+        final Set<String> denied = new HashSet<>();
+
+        @Override
+        public boolean wasDeniedPermanently(String permission) {
+            return denied.contains(permission);
+        }
+
+        @Override
+        public void record(String[] permissions, int[] grantResults, PermissionSet deniedPermanently) {
+            for(int i = 0; i < permissions.length; i++) {
+                if(deniedPermanently.contains(permissions[i])) {
+                    assertNotEquals(PermissionFlow.PERMISSION_GRANTED, grantResults[i]);
+                    denied.add(permissions[i]);
+                } else {
+                    denied.remove(permissions[i]);
+                }
+            }
+        }
+    }
+
+    private static class RecordingListener implements PartialGrantListener {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onPartiallyGranted(PermissionSet granted, PermissionSet missing) {
+            events.add("partial " + granted + " " + missing);
+        }
+
+        @Override
+        public void onRevoked(PermissionSet revoked) {
+            events.add("revoked " + revoked);
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        boolean runNext() {
+            Runnable task = tasks.poll();
+            if(task != null) {
+                task.run();
+            }
+            return task != null;
+        }
+    }
+
+    private FakePlatform mPlatform;
+    private Counter mOnGranted;
+    private Counter mOnRationale;
+    private Counter mOnDenied;
+    private Counter mOnDeniedPermanently;
+    private PermissionFlow mFlow;
+
+    @Before
+    public void setUp() {
+        mPlatform = new FakePlatform();
+        mOnGranted = new Counter();
+        mOnRationale = new Counter();
+        mOnDenied = new Counter();
+        mOnDeniedPermanently = new Counter();
+        mFlow = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, true,
+                                   mOnGranted, mOnRationale, mOnDenied, mOnDeniedPermanently,
+                                   null, null, null, true, null, true);
+    }
+
+    @Test
+    public void grantedPermissionsAreNotRequested() {
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertEquals(1, mOnGranted.count);
+        assertEquals(0, mPlatform.requests);
+    }
+
+    @Test
+    public void missingPermissionsAreRequested() {
+        mPlatform.granted.add(PERMISSION_A);
+        mFlow.call();
+        assertEquals(Fsm.State.REQUESTING, mFlow.getCurrentState());
+        assertEquals(1, mPlatform.requests);
+        assertArrayEquals(new String[] {PERMISSION_B}, mPlatform.lastRequest);
+
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertEquals(1, mOnGranted.count);
+    }
+
+    @Test
+    public void rationaleIsShownWhenPlatformAsks() {
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.call();
+        assertEquals(Fsm.State.RATIONALE, mFlow.getCurrentState());
+        assertEquals(1, mOnRationale.count);
+        mFlow.acceptRationale();
+        assertEquals(Fsm.State.REQUESTING, mFlow.getCurrentState());
+    }
+
+    @Test
+    public void deniedResultIsEvaluated() {
+        mFlow.call();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+        assertEquals(1, mOnDeniedPermanently.count);
+        assertEquals(PermissionSet.of(PERMISSION_B), mFlow.getDeniedPermissionSet());
+        assertTrue(mFlow.isPermissionDenied(PERMISSION_B));
+        assertFalse(mFlow.isPermissionDenied(PERMISSION_A));
+    }
+
+    @Test
+    public void onlyDeniedPermissionsAreRequestedAgain() {
+        mFlow.call();
+        assertArrayEquals(PERMISSIONS, mPlatform.lastRequest);
+        mPlatform.granted.add(PERMISSION_A);
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+        assertEquals(1, mOnDenied.count);
+
+        mPlatform.rationaleChecks.clear();
+        mFlow.call();
+        assertEquals(Fsm.State.RATIONALE, mFlow.getCurrentState());
+        assertEquals(Arrays.asList(PERMISSION_B), mPlatform.rationaleChecks);
+
+        mFlow.acceptRationale();
+        assertArrayEquals(new String[] {PERMISSION_B}, mPlatform.lastRequest);
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, new String[] {PERMISSION_B},
+                new int[] {PermissionFlow.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertTrue(mFlow.getDeniedPermissionSet().isEmpty());
+    }
+
+    @Test
+    public void permissionsRevokedSinceLastResultAreRequested() {
+        mFlow.call();
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        mFlow.call();
+        mFlow.acceptRationale();
+        assertArrayEquals(PERMISSIONS, mPlatform.lastRequest);
+    }
+
+    @Test
+    public void otherRequestCodeIsIgnored() {
+        mFlow.call();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE + 1, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.REQUESTING, mFlow.getCurrentState());
+    }
+
+    @Test
+    public void permissionsDeniedInPastAreNotRequested() {
+        FakeHistory history = new FakeHistory();
+        history.denied.add(PERMISSION_B);
+        mFlow.setHistory(history);
+        mFlow.call();
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+        assertEquals(1, mOnDeniedPermanently.count);
+        assertEquals(0, mPlatform.requests);
+    }
+
+    @Test
+    public void historyIsIgnoredWhenRationaleCanBeShown() {
+        FakeHistory history = new FakeHistory();
+        history.denied.add(PERMISSION_B);
+        mFlow.setHistory(history);
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.call();
+        assertEquals(Fsm.State.RATIONALE, mFlow.getCurrentState());
+    }
+
+    @Test
+    public void nonModalFlowDoesNotRequestPermanentlyDeniedPermissions() {
+        FakeHistory history = new FakeHistory();
+        history.denied.add(PERMISSION_B);
+        PermissionFlow flow = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, false,
+                                                 null, mOnRationale, null, mOnDeniedPermanently,
+                                                 null, null, null, true, null, true);
+        flow.setHistory(history);
+        assertEquals(Fsm.State.RATIONALE, flow.getCurrentState());
+
+        flow.call();
+        assertEquals(Fsm.State.DENIED, flow.getCurrentState());
+        assertEquals(0, mPlatform.requests);
+        assertEquals(1, mOnDeniedPermanently.count);
+    }
+
+    @Test
+    public void nonModalFlowRequestsWithoutHistory() {
+        PermissionFlow flow = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, false,
+                                                 null, mOnRationale, null, mOnDeniedPermanently,
+                                                 null, null, null, true, null, true);
+        flow.setHistory(new FakeHistory());
+        flow.call();
+        assertEquals(Fsm.State.REQUESTING, flow.getCurrentState());
+        assertEquals(1, mPlatform.requests);
+    }
+
+    @Test
+    public void permissionsGrantedSinceDenialAreIgnored() {
+        FakeHistory history = new FakeHistory();
+        history.denied.add(PERMISSION_A);
+        mFlow.setHistory(history);
+        mPlatform.granted.add(PERMISSION_A);
+        mFlow.call();
+        assertEquals(Fsm.State.REQUESTING, mFlow.getCurrentState());
+        assertEquals(1, mPlatform.requests);
+    }
+
+    @Test
+    public void resultsAreRecordedInHistory() {
+        FakeHistory history = new FakeHistory();
+        mFlow.setHistory(history);
+        mFlow.call();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        assertEquals(new HashSet<>(Arrays.asList(PERMISSION_B)), history.denied);
+    }
+
+    @Test
+    public void denialWithRationaleIsNotPermanent() {
+        FakeHistory history = new FakeHistory();
+        mFlow.setHistory(history);
+        mFlow.call();
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        assertTrue(history.denied.isEmpty());
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+    }
+
+    @Test
+    public void permissionsGrantedInSettingsAreForgotten() {
+        FakeHistory history = new FakeHistory();
+        history.denied.add(PERMISSION_B);
+        mFlow.setHistory(history);
+        mFlow.call();
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertTrue(history.denied.isEmpty());
+
+        mPlatform.granted.remove(PERMISSION_B);
+        PermissionFlow flow = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, true,
+                                                 null, null, null, null,
+                                                 null, null, null, true, null, true);
+        flow.setHistory(history);
+        flow.call();
+        assertEquals(Fsm.State.REQUESTING, flow.getCurrentState());
+    }
+
+    @Test
+    public void partialGrantIsReportedBeforeAggregateState() {
+        final RecordingListener listener = new RecordingListener();
+        mFlow.setPartialGrantListener(listener);
+        mFlow.call();
+        assertTrue(listener.events.isEmpty());
+        assertFalse(mFlow.getSnapshot().isAnyGranted());
+
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_DENIED});
+        assertEquals(Arrays.asList("partial " + PermissionSet.of(PERMISSION_A) + " " + PermissionSet.of(PERMISSION_B)), listener.events);
+        assertTrue(mFlow.getSnapshot().isGranted(PERMISSION_A));
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+    }
+
+    @Test
+    public void revocationIsReportedOnCall() {
+        final RecordingListener listener = new RecordingListener();
+        mFlow.setPartialGrantListener(listener);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertTrue(listener.events.isEmpty());
+
+        mPlatform.granted.remove(PERMISSION_B);
+        mFlow.call();
+        assertEquals(Arrays.asList("revoked " + PermissionSet.of(PERMISSION_B),
+                                   "partial " + PermissionSet.of(PERMISSION_A) + " " + PermissionSet.of(PERMISSION_B)),
+                     listener.events);
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+
+        listener.events.clear();
+        mFlow.call();
+        assertTrue(listener.events.isEmpty());
+    }
+
+    @Test
+    public void revalidationUsesGrantStateCheckedByCaller() {
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        assertTrue(mFlow.needsGrantCheck());
+
+        mPlatform.granted.clear();
+        assertFalse(mFlow.revalidate(PermissionSet.of(PERMISSIONS)));
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+
+        assertTrue(mFlow.revalidate(PermissionSet.of(PERMISSION_A)));
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+        assertEquals(1, mOnDeniedPermanently.count);
+        assertEquals(1, mOnGranted.count);
+    }
+
+    @Test
+    public void tokenIsValidWhileGranted() {
+        assertFalse(mFlow.getToken().isValid());
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        PermissionToken token = mFlow.getToken();
+        assertTrue(token.isValid());
+        assertEquals(PermissionSet.of(PERMISSIONS), token.getPermissions());
+
+        mFlow.call();
+        assertSame(token, mFlow.getToken());
+        assertTrue(token.isValid());
+    }
+
+    @Test
+    public void tokenIsInvalidatedByFailedCheck() {
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        PermissionToken token = mFlow.getToken();
+
+        mPlatform.granted.remove(PERMISSION_B);
+        mFlow.call();
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+        assertFalse(token.isValid());
+        assertFalse(mFlow.getToken().isValid());
+
+        mPlatform.granted.add(PERMISSION_B);
+        mFlow.call();
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertFalse(token.isValid());
+        assertTrue(mFlow.getToken().isValid());
+        assertNotEquals(token.getEpoch(), mFlow.getToken().getEpoch());
+    }
+
+    @Test
+    public void tokenIsInvalidatedByRevalidation() {
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        mFlow.call();
+        PermissionToken token = mFlow.getToken();
+        assertTrue(mFlow.revalidate(PermissionSet.of(PERMISSION_A)));
+        assertFalse(token.isValid());
+    }
+
+    @Test
+    public void tokenIsIssuedBeforeOnGranted() {
+        final PermissionToken[] token = new PermissionToken[1];
+        final PermissionFlow[] flow = new PermissionFlow[1];
+        flow[0] = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, true,
+                                     new Runnable() {
+                                         @Override
+                                         public void run() {
+                                             token[0] = flow[0].getToken();
+                                         }
+                                     }, null, null, null,
+                                     null, null, null, true, null, true);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        flow[0].call();
+        assertTrue(token[0].isValid());
+    }
+
+    @Test
+    public void outcomesAreReportedAfterCallbacks() {
+        final List<PermissionOutcome> outcomes = new ArrayList<>();
+        mFlow.addOutcomeListener(new PermissionOutcomeListener() {
+            @Override
+            public void onOutcome(PermissionOutcome outcome) {
+                assertEquals(outcome == PermissionOutcome.GRANTED ? 1 : 0, mOnGranted.count);
+                outcomes.add(outcome);
+            }
+        });
+
+        mPlatform.rationale.add(PERMISSION_B);
+        mFlow.call();
+        mFlow.rejectRationale();
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+
+        mFlow.call();
+        mFlow.acceptRationale();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, new String[0], new int[0]);
+
+        mPlatform.rationale.clear();
+        mFlow.call();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_GRANTED, PermissionFlow.PERMISSION_GRANTED});
+
+        assertEquals(Arrays.asList(PermissionOutcome.DENIED,
+                                   PermissionOutcome.CANCELLED,
+                                   PermissionOutcome.GRANTED), outcomes);
+    }
+
+    @Test
+    public void rejectedNonModalRationaleIsReportedAsDenied() {
+        final List<PermissionOutcome> outcomes = new ArrayList<>();
+        mPlatform.rationale.add(PERMISSION_B);
+        PermissionFlow flow = new PermissionFlow(mPlatform, REQUEST_CODE, PERMISSIONS, false,
+                                                 null, mOnRationale, null, null,
+                                                 null, null, null, true, null, true);
+        flow.addOutcomeListener(new PermissionOutcomeListener() {
+            @Override
+            public void onOutcome(PermissionOutcome outcome) {
+                outcomes.add(outcome);
+            }
+        });
+        assertEquals(Fsm.State.RATIONALE, flow.getCurrentState());
+
+        flow.rejectRationale();
+        assertEquals(Fsm.State.RATIONALE, flow.getCurrentState());
+        assertEquals(Arrays.asList(PermissionOutcome.DENIED), outcomes);
+    }
+
+    @Test
+    public void outcomeListenerCanRemoveItself() {
+        final List<PermissionOutcome> outcomes = new ArrayList<>();
+        mFlow.addOutcomeListener(new PermissionOutcomeListener() {
+            @Override
+            public void onOutcome(PermissionOutcome outcome) {
+                mFlow.removeOutcomeListener(this);
+                outcomes.add(outcome);
+            }
+        });
+        mFlow.call();
+        mFlow.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS,
+                new int[] {PermissionFlow.PERMISSION_DENIED, PermissionFlow.PERMISSION_DENIED});
+        mFlow.call();
+        assertEquals(Arrays.asList(PermissionOutcome.DENIED_PERMANENTLY), outcomes);
+        assertEquals(2, mOnDeniedPermanently.count);
+    }
+
+    @Test
+    public void asyncCallEvaluatesGuardsOnEvaluationExecutor() {
+        QueueExecutor background = new QueueExecutor();
+        QueueExecutor main = new QueueExecutor();
+        mFlow.setAsync(background, main);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+
+        mFlow.call();
+        assertTrue(mFlow.isEvaluating());
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+        assertTrue(main.tasks.isEmpty());
+
+        assertTrue(background.runNext());
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+        assertEquals(0, mOnGranted.count);
+
+        assertTrue(main.runNext());
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertEquals(1, mOnGranted.count);
+        assertFalse(mFlow.isEvaluating());
+    }
+
+    @Test
+    public void asyncCallsAreQueuedWhileEvaluating() {
+        QueueExecutor background = new QueueExecutor();
+        QueueExecutor main = new QueueExecutor();
+        mFlow.setAsync(background, main);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+
+        mFlow.call();
+        mFlow.call();
+        mFlow.call();
+        assertEquals(1, background.tasks.size());
+
+        while(background.runNext() | main.runNext()) {
+            // drain both executors
+        }
+        assertEquals(3, mOnGranted.count);
+        assertFalse(mFlow.isEvaluating());
+    }
+
+    @Test
+    public void asyncEvaluationIsRepeatedWhenStateChanges() {
+        QueueExecutor background = new QueueExecutor();
+        QueueExecutor main = new QueueExecutor();
+        mFlow.setAsync(background, main);
+
+        mFlow.call();
+        background.runNext();
+        mFlow.setCurrentState(Fsm.State.DENIED);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+        main.runNext();
+        assertEquals(Fsm.State.DENIED, mFlow.getCurrentState());
+        assertEquals(0, mPlatform.requests);
+
+        background.runNext();
+        main.runNext();
+        assertEquals(Fsm.State.GRANTED, mFlow.getCurrentState());
+        assertEquals(1, mOnGranted.count);
+    }
+
+    @Test
+    public void asyncEvaluationIsRepeatedAfterRoundTrip() {
+        QueueExecutor background = new QueueExecutor();
+        QueueExecutor main = new QueueExecutor();
+        mFlow.setAsync(background, main);
+        mPlatform.granted.addAll(Arrays.asList(PERMISSIONS));
+
+        mFlow.call();
+        background.runNext();
+        mPlatform.granted.clear();
+        mFlow.setCurrentState(Fsm.State.GRANTED);
+        mFlow.setCurrentState(Fsm.State.START);
+        main.runNext();
+        assertEquals(Fsm.State.START, mFlow.getCurrentState());
+        assertEquals(0, mOnGranted.count);
+
+        background.runNext();
+        main.runNext();
+        assertEquals(Fsm.State.REQUESTING, mFlow.getCurrentState());
+        assertEquals(1, mPlatform.requests);
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PermissionSetTest {
+
+    private static final String PERMISSION_A = "permission_set_a";
+    private static final String PERMISSION_B = "permission_set_b";
+    private static final String PERMISSION_C = "permission_set_c";
+
+    @Test
+    public void sameNamesInternedToSameIds() {
+        assertEquals(PermissionSet.intern(PERMISSION_A), PermissionSet.intern(new String(PERMISSION_A)));
+        assertEquals(PermissionSet.intern(PERMISSION_A), PermissionSet.idOf(PERMISSION_A));
+        assertEquals(PERMISSION_A, PermissionSet.nameOf(PermissionSet.idOf(PERMISSION_A)));
+        assertEquals(-1, PermissionSet.idOf("permission_set_never_interned"));
+    }
+
+    @Test
+    public void containment() {
+        PermissionSet set = PermissionSet.of(PERMISSION_A, PERMISSION_B);
+        assertTrue(set.contains(PERMISSION_A));
+        assertTrue(set.contains(PERMISSION_B));
+        assertFalse(set.contains(PERMISSION_C));
+        assertEquals(2, set.size());
+        assertTrue(set.containsAll(PermissionSet.of(PERMISSION_A)));
+        assertFalse(set.containsAll(PermissionSet.of(PERMISSION_A, PERMISSION_C)));
+        assertTrue(set.containsAny(PermissionSet.of(PERMISSION_A, PERMISSION_C)));
+    }
+
+    @Test
+    public void setOperations() {
+        PermissionSet ab = PermissionSet.of(PERMISSION_A, PERMISSION_B);
+        PermissionSet bc = PermissionSet.of(PERMISSION_B, PERMISSION_C);
+        assertEquals(PermissionSet.of(PERMISSION_A, PERMISSION_B, PERMISSION_C), ab.union(bc));
+        assertEquals(PermissionSet.of(PERMISSION_A), ab.difference(bc));
+        assertEquals(PermissionSet.of(PERMISSION_B), ab.intersection(bc));
+        assertEquals(PermissionSet.EMPTY, ab.difference(ab));
+        assertTrue(ab.difference(ab).isEmpty());
+    }
+
+    @Test
+    public void orderOfPermissionsDoesNotMatter() {
+        assertEquals(PermissionSet.of(PERMISSION_A, PERMISSION_B), PermissionSet.of(PERMISSION_B, PERMISSION_A));
+        assertEquals(PermissionSet.of(PERMISSION_A, PERMISSION_B).hashCode(), PermissionSet.of(Arrays.asList(PERMISSION_B, PERMISSION_A)).hashCode());
+    }
+
+    @Test
+    public void iteration() {
+        PermissionSet set = PermissionSet.of(PERMISSION_A, PERMISSION_B);
+        int count = 0;
+        for(String permission : set) {
+            assertTrue(permission.equals(PERMISSION_A) || permission.equals(PERMISSION_B));
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(2, set.toArray().length);
+        assertEquals(2, set.asList().size());
+    }
+
+    @Test
+    public void setsSpanningMultipleWords() {
+        String[] many = new String[100];
+        for(int i = 0; i < many.length; i++) {
+            many[i] = "permission_set_many_" + i;
+        }
+        PermissionSet set = PermissionSet.of(many);
+        assertEquals(100, set.size());
+        PermissionSet first = PermissionSet.of(Arrays.copyOfRange(many, 0, 70));
+        PermissionSet rest = set.difference(first);
+        assertEquals(30, rest.size());
+        assertEquals(set, first.union(rest));
+        assertTrue(rest.contains(many[99]));
+        assertFalse(rest.contains(many[0]));
+    }
+}
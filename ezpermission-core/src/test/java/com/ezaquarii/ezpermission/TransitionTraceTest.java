@@ -0,0 +1,130 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransitionTraceTest {
+
+    private boolean mWasEnabled;
+
+    private static Fsm createFsm(final int values) {
+        Fsm.Conditions conditions = new Fsm.Conditions() {
+            @Override
+            public boolean evaluate(int condition) throws Exception {
+                return (values & condition) != 0;
+            }
+        };
+        Fsm fsm = new Fsm(null, conditions, Fsm.ALL_CONDITIONS, null, null, null, null, null, null);
+        fsm.setTraceId(7);
+        return fsm;
+    }
+
+    @Before
+    public void setUp() {
+        mWasEnabled = TransitionTrace.isEnabled();
+        TransitionTrace.clear();
+        TransitionTrace.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        TransitionTrace.setEnabled(mWasEnabled);
+        TransitionTrace.clear();
+    }
+
+    @Test
+    public void transitionsAreRecorded() {
+        Fsm fsm = createFsm(Fsm.CAN_SHOW_RATIONALE);
+        fsm.event(Fsm.Event.DISPATCH);
+        fsm.event(Fsm.Event.DISPATCH);
+        String[] lines = TransitionTrace.dump().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].endsWith("#7 DISPATCH: START -> RATIONALE isGranted=false canShowRationale=true"));
+        assertTrue(lines[1], lines[1].endsWith("#7 DISPATCH: RATIONALE -> REQUESTING isRationaleModal=false wasDenied=false"));
+    }
+
+    @Test
+    public void oldEntriesAreOverwritten() {
+        Fsm fsm = createFsm(Fsm.IS_GRANTED);
+        fsm.setCurrentState(Fsm.State.GRANTED);
+        for(int i = 0; i < TransitionTrace.CAPACITY + 10; i++) {
+            fsm.event(Fsm.Event.DISPATCH);
+        }
+        assertEquals(TransitionTrace.CAPACITY, TransitionTrace.dump().split("\n").length);
+        assertNull(TransitionTrace.format(0));
+        assertNotNull(TransitionTrace.format(TransitionTrace.CAPACITY + 9));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() {
+        TransitionTrace.setEnabled(false);
+        createFsm(Fsm.IS_GRANTED).event(Fsm.Event.DISPATCH);
+        assertEquals("", TransitionTrace.dump());
+    }
+
+    @Test
+    public void debugLoggerReceivesDecodedTransition() {
+        TransitionTrace.setEnabled(false);
+        final List<String> log = new ArrayList<>();
+        Fsm fsm = createFsm(Fsm.IS_GRANTED);
+        fsm.setDebug(true);
+        fsm.setLogger(new Fsm.Logger() {
+            @Override
+            public void log(String transition) {
+                log.add(transition);
+            }
+        });
+        fsm.event(Fsm.Event.DISPATCH);
+        assertEquals(1, log.size());
+        assertTrue(log.get(0), log.get(0).endsWith("#7 DISPATCH: START -> GRANTED isGranted=true"));
+    }
+
+    @Test
+    public void racingWritersDoNotTearEntries() throws InterruptedException {
+        final Fsm.Event[] events = Fsm.Event.values();
+        Thread[] threads = new Thread[events.length];
+        for(int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final long transition = TransitionTrace.pack(id, events[id], Fsm.State.START, Fsm.State.START, 0, 0);
+                    for(int n = 0; n < 20000; n++) {
+                        TransitionTrace.record(id * 1000L, transition);
+                    }
+                }
+            });
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(String line : TransitionTrace.dump().split("\n")) {
+            final int id = Integer.parseInt(line.substring(line.indexOf('#') + 1, line.indexOf(' ', line.indexOf('#'))));
+            assertTrue(line, line.contains(" " + events[id] + ": "));
+            assertEquals(line, String.format("%02d.000", id), line.substring(6, 12));
+        }
+    }
+}
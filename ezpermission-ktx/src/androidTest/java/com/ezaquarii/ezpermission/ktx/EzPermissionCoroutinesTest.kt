@@ -0,0 +1,160 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.ktx
+
+import android.app.Activity
+import android.content.pm.PackageManager
+import com.ezaquarii.ezpermission.EzPermission
+import com.ezaquarii.ezpermission.PermissionFlow
+import com.ezaquarii.ezpermission.PermissionOutcome
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.Unconfined
+import kotlinx.coroutines.experimental.launch
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.mock
+
+class EzPermissionCoroutinesTest {
+
+    companion object {
+        const val REQUEST_CODE = 1
+        const val PERMISSION = "permission_a"
+    }
+
+    private var isGranted = false
+    private var canShowRationale = false
+    private var requestCount = 0
+    private var outcome: PermissionOutcome? = null
+    private lateinit var helper: EzPermission
+
+    @Before
+    fun setUp() {
+        helper = mock(Activity::class.java).ezPermission(REQUEST_CODE, PERMISSION) {
+            isModal(true)
+            onRequest { requestCount++ }
+            onRationale { }
+            canShowRationale(memoize = false) { canShowRationale }
+            isPermissionGranted(memoize = false) { isGranted }
+        }
+    }
+
+    /**
+     * Unconfined coroutine runs until suspension in the caller thread
+     * and is resumed synchronously by the outcome.
+     */
+    private fun launchRequest(): Job = launch(Unconfined) {
+        outcome = helper.request()
+    }
+
+    private fun deliver(grantResult: Int) {
+        helper.onRequestPermissionsResult(REQUEST_CODE, arrayOf(PERMISSION), intArrayOf(grantResult))
+    }
+
+    private fun outcomeListenerCount(): Int {
+        val flowField = EzPermission::class.java.getDeclaredField("mFlow")
+        flowField.isAccessible = true
+        val listenersField = PermissionFlow::class.java.getDeclaredField("mOutcomeListeners")
+        listenersField.isAccessible = true
+        return (listenersField.get(flowField.get(helper)) as Array<*>).size
+    }
+
+    @Test
+    fun requestResumesWhenGranted() {
+        val job = launchRequest()
+        assertEquals(1, requestCount)
+        assertNull(outcome)
+
+        isGranted = true
+        deliver(PackageManager.PERMISSION_GRANTED)
+        assertEquals(PermissionOutcome.GRANTED, outcome)
+        assertTrue(job.isCompleted)
+        assertEquals(0, outcomeListenerCount())
+    }
+
+    @Test
+    fun requestResumesImmediatelyWhenAlreadyGranted() {
+        isGranted = true
+        val job = launchRequest()
+        assertEquals(0, requestCount)
+        assertEquals(PermissionOutcome.GRANTED, outcome)
+        assertTrue(job.isCompleted)
+    }
+
+    @Test
+    fun requestResumesWhenDenied() {
+        val job = launchRequest()
+        canShowRationale = true
+        deliver(PackageManager.PERMISSION_DENIED)
+        assertEquals(PermissionOutcome.DENIED, outcome)
+        assertTrue(job.isCompleted)
+    }
+
+    @Test
+    fun requestResumesWhenDeniedPermanently() {
+        val job = launchRequest()
+        deliver(PackageManager.PERMISSION_DENIED)
+        assertEquals(PermissionOutcome.DENIED_PERMANENTLY, outcome)
+        assertTrue(job.isCompleted)
+    }
+
+    @Test
+    fun requestResumesWhenCancelled() {
+        val job = launchRequest()
+        helper.onRequestPermissionsResult(REQUEST_CODE, arrayOf<String>(), intArrayOf())
+        assertEquals(PermissionOutcome.CANCELLED, outcome)
+        assertTrue(job.isCompleted)
+    }
+
+    @Test
+    fun requestResumesWhenRationaleIsRejected() {
+        canShowRationale = true
+        val job = launchRequest()
+        assertNull(outcome)
+
+        helper.rejectRationale()
+        assertEquals(PermissionOutcome.DENIED, outcome)
+        assertTrue(job.isCompleted)
+        assertEquals(0, requestCount)
+    }
+
+    @Test
+    fun requestWaitsForAcceptedRationale() {
+        canShowRationale = true
+        launchRequest()
+        helper.acceptRationale()
+        assertEquals(1, requestCount)
+        assertNull(outcome)
+
+        isGranted = true
+        deliver(PackageManager.PERMISSION_GRANTED)
+        assertEquals(PermissionOutcome.GRANTED, outcome)
+    }
+
+    @Test
+    fun cancellationRemovesListener() {
+        val job = launchRequest()
+        assertEquals(1, outcomeListenerCount())
+
+        job.cancel()
+        assertEquals(0, outcomeListenerCount())
+
+        isGranted = true
+        deliver(PackageManager.PERMISSION_GRANTED)
+        assertNull(outcome)
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.ktx
+
+import android.app.Activity
+import android.content.pm.PackageManager
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.verifyZeroInteractions
+
+class EzPermissionDslTest {
+
+    companion object {
+        const val REQUEST_CODE = 1
+        const val PERMISSION = "permission_a"
+    }
+
+    @Test
+    fun blocksAreForwardedToHelper() {
+        val activity = mock(Activity::class.java)
+        val calls = ArrayList<String>()
+        var isGranted = false
+        var canShowRationale = true
+        val helper = activity.ezPermission(REQUEST_CODE, PERMISSION) {
+            isModal(true)
+            onRationale { calls.add("rationale") }
+            onRequest { calls.add("request") }
+            onGranted { calls.add("granted") }
+            onDenied { calls.add("denied") }
+            onDeniedPermanently { calls.add("deniedPermanently") }
+            onCancelled { calls.add("cancelled") }
+            canShowRationale(memoize = false) { canShowRationale }
+            isPermissionGranted(memoize = false) { isGranted }
+        }
+
+        helper.call()
+        helper.acceptRationale()
+        helper.onRequestPermissionsResult(REQUEST_CODE, arrayOf<String>(), intArrayOf())
+        assertEquals(listOf("rationale", "request", "cancelled"), calls)
+
+        calls.clear()
+        helper.call()
+        helper.acceptRationale()
+        helper.onRequestPermissionsResult(REQUEST_CODE, arrayOf(PERMISSION), intArrayOf(PackageManager.PERMISSION_DENIED))
+        assertEquals(listOf("rationale", "request", "denied"), calls)
+
+        calls.clear()
+        helper.call()
+        helper.acceptRationale()
+        canShowRationale = false
+        helper.onRequestPermissionsResult(REQUEST_CODE, arrayOf(PERMISSION), intArrayOf(PackageManager.PERMISSION_DENIED))
+        assertEquals(listOf("rationale", "request", "deniedPermanently"), calls)
+
+        calls.clear()
+        isGranted = true
+        helper.call()
+        assertEquals(listOf("granted"), calls)
+        verifyZeroInteractions(activity)
+    }
+}
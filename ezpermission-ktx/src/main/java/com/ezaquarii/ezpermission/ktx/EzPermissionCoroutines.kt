@@ -0,0 +1,53 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.ktx
+
+import com.ezaquarii.ezpermission.EzPermission
+import com.ezaquarii.ezpermission.PermissionOutcome
+import com.ezaquarii.ezpermission.PermissionOutcomeListener
+import kotlinx.coroutines.experimental.suspendCancellableCoroutine
+
+/**
+ * Call code that requires permissions and suspend until the flow reaches
+ * an outcome. Rationale callbacks run as usual; coroutine stays suspended
+ * until rationale is accepted or rejected. Rejected rationale, modal or not,
+ * resumes with [PermissionOutcome.DENIED].
+ *
+ * Helper must be called on the main thread, so use main thread context,
+ * ex. `launch(UI) { ... }` with `UI` from `kotlinx.coroutines.experimental.android`.
+ * If coroutine is cancelled, helper is left intact and its outcome is no
+ * longer awaited.
+ *
+ *     launch(UI) {
+ *         if (camera.request() == PermissionOutcome.GRANTED) {
+ *             takePicture()
+ *         }
+ *     }
+ *
+ * @return Flow outcome
+ */
+suspend fun EzPermission.request(): PermissionOutcome = suspendCancellableCoroutine { continuation ->
+    val listener = object : PermissionOutcomeListener {
+        override fun onOutcome(outcome: PermissionOutcome) {
+            removeOutcomeListener(this)
+            if (continuation.isActive) {
+                continuation.resume(outcome)
+            }
+        }
+    }
+    addOutcomeListener(listener)
+    continuation.invokeOnCompletion { removeOutcomeListener(listener) }
+    call()
+}
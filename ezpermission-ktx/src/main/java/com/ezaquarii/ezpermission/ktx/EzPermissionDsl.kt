@@ -0,0 +1,91 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.ktx
+
+import android.app.Activity
+import android.support.v4.app.Fragment
+import com.ezaquarii.ezpermission.EzPermission
+import java.util.concurrent.Callable
+
+@DslMarker
+annotation class EzPermissionDslMarker
+
+/**
+ * Builder DSL over [EzPermission.Builder]. Callbacks are inlined into
+ * a single [Runnable] each, so no extra function object is captured.
+ * Options not covered by the DSL are available via [builder].
+ */
+@EzPermissionDslMarker
+class EzPermissionDsl @PublishedApi internal constructor(val builder: EzPermission.Builder) {
+
+    fun isModal(isModal: Boolean) {
+        builder.isModal(isModal)
+    }
+
+    inline fun onGranted(crossinline block: () -> Unit) {
+        builder.onGranted(Runnable { block() })
+    }
+
+    inline fun onRationale(crossinline block: () -> Unit) {
+        builder.onRationale(Runnable { block() })
+    }
+
+    inline fun onDenied(crossinline block: () -> Unit) {
+        builder.onDenied(Runnable { block() })
+    }
+
+    inline fun onDeniedPermanently(crossinline block: () -> Unit) {
+        builder.onDeniedPermanantly(Runnable { block() })
+    }
+
+    inline fun onCancelled(crossinline block: () -> Unit) {
+        builder.onCancelled(Runnable { block() })
+    }
+
+    inline fun onRequest(crossinline block: () -> Unit) {
+        builder.onRequest(Runnable { block() })
+    }
+
+    inline fun canShowRationale(memoize: Boolean = true, crossinline guard: () -> Boolean) {
+        builder.canShowRationale(Callable { guard() }, memoize)
+    }
+
+    inline fun isPermissionGranted(memoize: Boolean = true, crossinline guard: () -> Boolean) {
+        builder.isPermissionGranted(Callable { guard() }, memoize)
+    }
+}
+
+/**
+ * Build permission helper for this activity.
+ *
+ *     val camera = ezPermission(REQUEST_CAMERA, CAMERA) {
+ *         onGranted { startPreview() }
+ *         onDeniedPermanently { showSettings() }
+ *     }
+ */
+inline fun Activity.ezPermission(requestCode: Int, vararg permissions: String, init: EzPermissionDsl.() -> Unit): EzPermission {
+    val dsl = EzPermissionDsl(EzPermission.of(this, requestCode, permissions))
+    dsl.init()
+    return dsl.builder.build()
+}
+
+/**
+ * Build permission helper for this fragment.
+ */
+inline fun Fragment.ezPermission(requestCode: Int, vararg permissions: String, init: EzPermissionDsl.() -> Unit): EzPermission {
+    val dsl = EzPermissionDsl(EzPermission.of(this, requestCode, permissions))
+    dsl.init()
+    return dsl.builder.build()
+}
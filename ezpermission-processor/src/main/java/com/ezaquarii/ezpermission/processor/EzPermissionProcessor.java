@@ -0,0 +1,316 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.processor;
+
+import com.ezaquarii.ezpermission.annotation.NeedsPermission;
+import com.ezaquarii.ezpermission.annotation.OnCancelled;
+import com.ezaquarii.ezpermission.annotation.OnDenied;
+import com.ezaquarii.ezpermission.annotation.OnDeniedPermanently;
+import com.ezaquarii.ezpermission.annotation.OnRationale;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates {@code <Host>Permissions} class for every activity or fragment
+ * with {@link NeedsPermission} methods. Errors are reported on offending
+ * elements and no code is generated for invalid hosts.
+ */
+public class EzPermissionProcessor extends AbstractProcessor {
+
+    private static final String[] HOST_TYPES = {
+        "android.app.Activity",
+        "android.support.v4.app.Fragment"
+    };
+
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList(
+        "onRequestPermissionsResult",
+        "saveInstanceState",
+        "restoreInstanceState",
+        "dispatch"
+    ));
+
+    private Elements mElements;
+    private Types mTypes;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        types.add(NeedsPermission.class.getCanonicalName());
+        types.add(OnRationale.class.getCanonicalName());
+        types.add(OnDenied.class.getCanonicalName());
+        types.add(OnDeniedPermanently.class.getCanonicalName());
+        types.add(OnCancelled.class.getCanonicalName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<ExecutableElement>> hosts = new LinkedHashMap<>();
+        for(Element element : roundEnv.getElementsAnnotatedWith(NeedsPermission.class)) {
+            TypeElement host = (TypeElement) element.getEnclosingElement();
+            List<ExecutableElement> methods = hosts.get(host);
+            if(methods == null) {
+                methods = new ArrayList<>();
+                hosts.put(host, methods);
+            }
+            methods.add((ExecutableElement) element);
+        }
+        reportOrphans(roundEnv, hosts.keySet(), OnRationale.class);
+        reportOrphans(roundEnv, hosts.keySet(), OnDenied.class);
+        reportOrphans(roundEnv, hosts.keySet(), OnDeniedPermanently.class);
+        reportOrphans(roundEnv, hosts.keySet(), OnCancelled.class);
+
+        for(Map.Entry<TypeElement, List<ExecutableElement>> entry : hosts.entrySet()) {
+            List<PermissionGroup> groups = collectGroups(entry.getKey(), entry.getValue());
+            if(groups != null) {
+                generate(entry.getKey(), groups);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return groups of host or null if host is invalid
+     */
+    private List<PermissionGroup> collectGroups(TypeElement host, List<ExecutableElement> methods) {
+        boolean valid = true;
+        if(!isHost(host)) {
+            error(host, "@NeedsPermission methods must be declared in Activity or support Fragment");
+            valid = false;
+        }
+        if(host.getModifiers().contains(Modifier.PRIVATE)) {
+            error(host, "Host class must not be private");
+            valid = false;
+        }
+
+        Set<Integer> requestCodes = new HashSet<>();
+        for(ExecutableElement method : methods) {
+            int requestCode = method.getAnnotation(NeedsPermission.class).requestCode();
+            if(requestCode < -1 || requestCode >= NeedsPermission.FIRST_REGISTRY_REQUEST_CODE) {
+                error(method, "Request code must be in range 0.." + (NeedsPermission.FIRST_REGISTRY_REQUEST_CODE - 1) + ": " + requestCode);
+                valid = false;
+            } else if(requestCode >= 0 && !requestCodes.add(requestCode)) {
+                error(method, "Duplicate request code: " + requestCode);
+                valid = false;
+            }
+        }
+
+        List<PermissionGroup> groups = new ArrayList<>();
+        int nextRequestCode = NeedsPermission.FIRST_REQUEST_CODE;
+        for(ExecutableElement method : methods) {
+            valid &= checkMethod(method, NeedsPermission.class);
+            if(RESERVED_NAMES.contains(method.getSimpleName().toString())) {
+                error(method, "Method name is reserved by generated class: " + method.getSimpleName());
+                valid = false;
+            }
+            NeedsPermission annotation = method.getAnnotation(NeedsPermission.class);
+            if(annotation.value().length == 0) {
+                error(method, "@NeedsPermission requires at least one permission");
+                valid = false;
+            }
+            int requestCode = annotation.requestCode();
+            if(requestCode < 0) {
+                while(requestCodes.contains(nextRequestCode)) {
+                    nextRequestCode++;
+                }
+                if(nextRequestCode > NeedsPermission.LAST_REQUEST_CODE) {
+                    error(method, "No free request codes; set request code explicitly");
+                    valid = false;
+                }
+                requestCode = nextRequestCode++;
+            }
+            groups.add(new PermissionGroup(method, annotation.value(), requestCode, annotation.modal()));
+        }
+
+        for(Element element : host.getEnclosedElements()) {
+            if(element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) element;
+            OnRationale onRationale = method.getAnnotation(OnRationale.class);
+            if(onRationale != null) {
+                PermissionGroup group = findGroup(method, groups, onRationale.value(), OnRationale.class);
+                if(group != null && checkMethod(method, OnRationale.class) && checkUnique(method, group.onRationale, OnRationale.class)) {
+                    group.onRationale = method;
+                } else {
+                    valid = false;
+                }
+            }
+            OnDenied onDenied = method.getAnnotation(OnDenied.class);
+            if(onDenied != null) {
+                PermissionGroup group = findGroup(method, groups, onDenied.value(), OnDenied.class);
+                if(group != null && checkMethod(method, OnDenied.class) && checkUnique(method, group.onDenied, OnDenied.class)) {
+                    group.onDenied = method;
+                } else {
+                    valid = false;
+                }
+            }
+            OnDeniedPermanently onDeniedPermanently = method.getAnnotation(OnDeniedPermanently.class);
+            if(onDeniedPermanently != null) {
+                PermissionGroup group = findGroup(method, groups, onDeniedPermanently.value(), OnDeniedPermanently.class);
+                if(group != null && checkMethod(method, OnDeniedPermanently.class) && checkUnique(method, group.onDeniedPermanently, OnDeniedPermanently.class)) {
+                    group.onDeniedPermanently = method;
+                } else {
+                    valid = false;
+                }
+            }
+            OnCancelled onCancelled = method.getAnnotation(OnCancelled.class);
+            if(onCancelled != null) {
+                PermissionGroup group = findGroup(method, groups, onCancelled.value(), OnCancelled.class);
+                if(group != null && checkMethod(method, OnCancelled.class) && checkUnique(method, group.onCancelled, OnCancelled.class)) {
+                    group.onCancelled = method;
+                } else {
+                    valid = false;
+                }
+            }
+        }
+        return valid ? groups : null;
+    }
+
+    private PermissionGroup findGroup(ExecutableElement method, List<PermissionGroup> groups,
+                                      String[] permissions, Class<? extends Annotation> annotation) {
+        if(permissions.length == 0) {
+            if(groups.size() == 1) {
+                return groups.get(0);
+            }
+            error(method, "@" + annotation.getSimpleName() + " must list permissions when host has more than one @NeedsPermission method");
+            return null;
+        }
+        for(PermissionGroup group : groups) {
+            if(group.matches(permissions)) {
+                return group;
+            }
+        }
+        error(method, "@" + annotation.getSimpleName() + " permissions do not match any @NeedsPermission method");
+        return null;
+    }
+
+    private boolean checkUnique(ExecutableElement method, ExecutableElement existing, Class<? extends Annotation> annotation) {
+        if(existing != null) {
+            error(method, "Duplicate @" + annotation.getSimpleName() + " for permissions already handled by " + existing.getSimpleName() + "()");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkMethod(ExecutableElement method, Class<? extends Annotation> annotation) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            error(method, "@" + annotation.getSimpleName() + " method must not be private or static");
+            return false;
+        }
+        if(!method.getParameters().isEmpty()) {
+            error(method, "@" + annotation.getSimpleName() + " method must not take parameters");
+            return false;
+        }
+        return true;
+    }
+
+    private void reportOrphans(RoundEnvironment roundEnv, Set<TypeElement> hosts, Class<? extends Annotation> annotation) {
+        for(Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if(!hosts.contains(element.getEnclosingElement())) {
+                error(element, "@" + annotation.getSimpleName() + " method declared in class without @NeedsPermission methods");
+            }
+        }
+    }
+
+    private boolean isHost(TypeElement host) {
+        TypeMirror type = mTypes.erasure(host.asType());
+        for(String hostType : HOST_TYPES) {
+            TypeElement hostElement = mElements.getTypeElement(hostType);
+            if(hostElement != null && mTypes.isSubtype(type, mTypes.erasure(hostElement.asType()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement host, List<PermissionGroup> groups) {
+        PackageElement packageElement = mElements.getPackageOf(host);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String className = generatedClassName(host) + HelperGenerator.SUFFIX;
+        HelperGenerator generator = new HelperGenerator(packageName, className, host.getQualifiedName().toString(), groups);
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, host);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(generator.generate());
+            } finally {
+                writer.close();
+            }
+        } catch(IOException e) {
+            error(host, "Cannot write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nested classes are joined with underscore, ex. Outer_Inner.
+     */
+    private static String generatedClassName(TypeElement host) {
+        String name = host.getSimpleName().toString();
+        Element enclosing = host.getEnclosingElement();
+        while(enclosing.getKind() != ElementKind.PACKAGE) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private void error(Element element, String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,346 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.processor;
+
+import java.util.List;
+
+/**
+ * Generates source of {@code <Host>Permissions} class. Generated class builds
+ * one {@code EzPermission} helper per group using regular builder, so runtime
+ * behaviour is exactly the same as with hand-written builder chains.
+ *
+ * Host methods are called through a static dispatch table; every callback
+ * is a small {@code Callback} object holding host and callback id, so there
+ * is no reflection and no generated class per callback.
+ */
+final class HelperGenerator {
+
+    static final String SUFFIX = "Permissions";
+
+    private static final String INDENT = "    ";
+
+    private static final String GRANTED = "GRANTED";
+    private static final String RATIONALE = "RATIONALE";
+    private static final String DENIED = "DENIED";
+    private static final String DENIED_PERMANENTLY = "DENIED_PERMANENTLY";
+    private static final String CANCELLED = "CANCELLED";
+
+    private final String mPackageName;
+    private final String mClassName;
+    private final String mHostName;
+    private final List<PermissionGroup> mGroups;
+    private final StringBuilder mOut = new StringBuilder();
+    private int mIndent = 0;
+
+    /**
+     * @param packageName Package of host and generated class
+     * @param className Simple name of generated class
+     * @param hostName Canonical name of host class
+     * @param groups Permission groups of host
+     */
+    HelperGenerator(String packageName, String className, String hostName, List<PermissionGroup> groups) {
+        mPackageName = packageName;
+        mClassName = className;
+        mHostName = hostName;
+        mGroups = groups;
+    }
+
+    String generate() {
+        if(!mPackageName.isEmpty()) {
+            line("package " + mPackageName + ";");
+            line("");
+        }
+        line("import android.os.Bundle;");
+        line("");
+        line("import com.ezaquarii.ezpermission.EzPermission;");
+        line("");
+        line("/**");
+        line(" * Permission wiring of {@link " + mHostName + "}. Generated by EzPermission annotation processor.");
+        line(" */");
+        open("final class " + mClassName);
+        line("");
+
+        for(PermissionGroup group : mGroups) {
+            line("static final int " + requestCodeConstant(group) + " = " + group.requestCode + ";");
+        }
+        line("");
+        for(PermissionGroup group : mGroups) {
+            StringBuilder permissions = new StringBuilder();
+            for(String permission : group.permissions) {
+                if(permissions.length() > 0) {
+                    permissions.append(", ");
+                }
+                permissions.append(literal(permission));
+            }
+            line("private static final String[] " + permissionsConstant(group) + " = new String[] {" + permissions + "};");
+        }
+        line("");
+        int callbackId = 0;
+        for(PermissionGroup group : mGroups) {
+            line("private static final int " + callbackConstant(group, GRANTED) + " = " + callbackId++ + ";");
+            if(group.onRationale != null) {
+                line("private static final int " + callbackConstant(group, RATIONALE) + " = " + callbackId++ + ";");
+            }
+            if(group.onDenied != null) {
+                line("private static final int " + callbackConstant(group, DENIED) + " = " + callbackId++ + ";");
+            }
+            if(group.onDeniedPermanently != null) {
+                line("private static final int " + callbackConstant(group, DENIED_PERMANENTLY) + " = " + callbackId++ + ";");
+            }
+            if(group.onCancelled != null) {
+                line("private static final int " + callbackConstant(group, CANCELLED) + " = " + callbackId++ + ";");
+            }
+        }
+        line("");
+        for(PermissionGroup group : mGroups) {
+            line("private final EzPermission " + helperField(group) + ";");
+        }
+        line("");
+
+        generateConstructor();
+        for(PermissionGroup group : mGroups) {
+            generateGroupMethods(group);
+        }
+        generateResultForwarding();
+        generateInstanceStateForwarding();
+        generateDispatchTable();
+        generateCallbackClass();
+
+        close();
+        return mOut.toString();
+    }
+
+    private void generateConstructor() {
+        open(mClassName + "(" + mHostName + " target)");
+        for(PermissionGroup group : mGroups) {
+            line(helperField(group) + " = EzPermission.of(target, " + requestCodeConstant(group) + ", " + permissionsConstant(group) + ")");
+            mIndent += 2;
+            line(".isModal(" + group.modal + ")");
+            line(".onGranted(new Callback(target, " + callbackConstant(group, GRANTED) + "))");
+            if(group.onRationale != null) {
+                line(".onRationale(new Callback(target, " + callbackConstant(group, RATIONALE) + "))");
+            }
+            if(group.onDenied != null) {
+                line(".onDenied(new Callback(target, " + callbackConstant(group, DENIED) + "))");
+            }
+            if(group.onDeniedPermanently != null) {
+                line(".onDeniedPermanantly(new Callback(target, " + callbackConstant(group, DENIED_PERMANENTLY) + "))");
+            }
+            if(group.onCancelled != null) {
+                line(".onCancelled(new Callback(target, " + callbackConstant(group, CANCELLED) + "))");
+            }
+            line(".build();");
+            mIndent -= 2;
+        }
+        close();
+    }
+
+    private void generateGroupMethods(PermissionGroup group) {
+        line("");
+        line("/**");
+        line(" * Call {@link " + mHostName + "#" + group.getName() + "()} when permissions are granted.");
+        line(" */");
+        open("void " + group.getName() + "()");
+        line(helperField(group) + ".call();");
+        close();
+
+        if(group.onRationale != null) {
+            final String name = capitalize(group.getName());
+            line("");
+            line("/**");
+            line(" * Accept rationale shown before {@link " + mHostName + "#" + group.getName() + "()}.");
+            line(" */");
+            open("void accept" + name + "Rationale()");
+            line(helperField(group) + ".acceptRationale();");
+            close();
+            line("");
+            line("/**");
+            line(" * Reject rationale shown before {@link " + mHostName + "#" + group.getName() + "()}.");
+            line(" */");
+            open("void reject" + name + "Rationale()");
+            line(helperField(group) + ".rejectRationale();");
+            close();
+        }
+
+        line("");
+        line("/**");
+        line(" * @return Helper used by {@link " + mHostName + "#" + group.getName() + "()}");
+        line(" */");
+        open("EzPermission get" + capitalize(group.getName()) + "Helper()");
+        line("return " + helperField(group) + ";");
+        close();
+    }
+
+    private void generateResultForwarding() {
+        line("");
+        line("/**");
+        line(" * This method should be called in host onRequestPermissionsResult().");
+        line(" */");
+        open("void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults)");
+        open("switch(requestCode)");
+        for(PermissionGroup group : mGroups) {
+            line("case " + requestCodeConstant(group) + ":");
+            mIndent++;
+            line(helperField(group) + ".onRequestPermissionsResult(requestCode, permissions, grantResults);");
+            line("break;");
+            mIndent--;
+        }
+        line("default:");
+        mIndent++;
+        line("break;");
+        mIndent--;
+        close();
+        close();
+    }
+
+    private void generateInstanceStateForwarding() {
+        line("");
+        open("void saveInstanceState(Bundle outState)");
+        for(PermissionGroup group : mGroups) {
+            line(helperField(group) + ".saveInstanceState(outState);");
+        }
+        close();
+        line("");
+        open("void restoreInstanceState(Bundle inState)");
+        for(PermissionGroup group : mGroups) {
+            line(helperField(group) + ".restoreInstanceState(inState);");
+        }
+        close();
+    }
+
+    private void generateDispatchTable() {
+        line("");
+        line("/**");
+        line(" * Call host method of a callback.");
+        line(" */");
+        open("static void dispatch(" + mHostName + " target, int callback)");
+        open("switch(callback)");
+        for(PermissionGroup group : mGroups) {
+            dispatchCase(group, GRANTED, group.getName());
+            if(group.onRationale != null) {
+                dispatchCase(group, RATIONALE, group.onRationale.getSimpleName().toString());
+            }
+            if(group.onDenied != null) {
+                dispatchCase(group, DENIED, group.onDenied.getSimpleName().toString());
+            }
+            if(group.onDeniedPermanently != null) {
+                dispatchCase(group, DENIED_PERMANENTLY, group.onDeniedPermanently.getSimpleName().toString());
+            }
+            if(group.onCancelled != null) {
+                dispatchCase(group, CANCELLED, group.onCancelled.getSimpleName().toString());
+            }
+        }
+        line("default:");
+        mIndent++;
+        line("throw new IllegalArgumentException(\"Unknown callback: \" + callback);");
+        mIndent--;
+        close();
+        close();
+    }
+
+    private void dispatchCase(PermissionGroup group, String callback, String method) {
+        line("case " + callbackConstant(group, callback) + ":");
+        mIndent++;
+        line("target." + method + "();");
+        line("break;");
+        mIndent--;
+    }
+
+    private void generateCallbackClass() {
+        line("");
+        open("private static final class Callback implements Runnable");
+        line("");
+        line("private final " + mHostName + " mTarget;");
+        line("private final int mCallback;");
+        line("");
+        open("Callback(" + mHostName + " target, int callback)");
+        line("mTarget = target;");
+        line("mCallback = callback;");
+        close();
+        line("");
+        line("@Override");
+        open("public void run()");
+        line("dispatch(mTarget, mCallback);");
+        close();
+        close();
+    }
+
+    private static String requestCodeConstant(PermissionGroup group) {
+        return "REQUEST_" + constantName(group.getName());
+    }
+
+    private static String permissionsConstant(PermissionGroup group) {
+        return "PERMISSIONS_" + constantName(group.getName());
+    }
+
+    private static String callbackConstant(PermissionGroup group, String callback) {
+        return constantName(group.getName()) + "_" + callback;
+    }
+
+    private static String helperField(PermissionGroup group) {
+        return "m" + capitalize(group.getName());
+    }
+
+    /**
+     * Convert camel case method name to constant name, ex. takePhoto to TAKE_PHOTO.
+     */
+    static String constantName(String name) {
+        StringBuilder builder = new StringBuilder(name.length() + 4);
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+                builder.append('_');
+            }
+            builder.append(Character.toUpperCase(c));
+        }
+        return builder.toString();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String literal(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.append('"').toString();
+    }
+
+    private void open(String declaration) {
+        line(declaration + " {");
+        mIndent++;
+    }
+
+    private void close() {
+        mIndent--;
+        line("}");
+    }
+
+    private void line(String line) {
+        if(!line.isEmpty()) {
+            for(int i = 0; i < mIndent; i++) {
+                mOut.append(INDENT);
+            }
+            mOut.append(line);
+        }
+        mOut.append('\n');
+    }
+}
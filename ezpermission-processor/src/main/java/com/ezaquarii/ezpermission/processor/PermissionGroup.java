@@ -0,0 +1,55 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.processor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.lang.model.element.ExecutableElement;
+
+/**
+ * Single {@code NeedsPermission} method with its callbacks. Every group
+ * becomes one {@code EzPermission} helper in generated class.
+ */
+final class PermissionGroup {
+
+    final ExecutableElement method;
+    final String[] permissions;
+    final int requestCode;
+    final boolean modal;
+
+    ExecutableElement onRationale = null;
+    ExecutableElement onDenied = null;
+    ExecutableElement onDeniedPermanently = null;
+    ExecutableElement onCancelled = null;
+
+    PermissionGroup(ExecutableElement method, String[] permissions, int requestCode, boolean modal) {
+        this.method = method;
+        this.permissions = permissions;
+        this.requestCode = requestCode;
+        this.modal = modal;
+    }
+
+    String getName() {
+        return method.getSimpleName().toString();
+    }
+
+    /**
+     * @return true if group requires exactly given permissions, in any order
+     */
+    boolean matches(String[] permissions) {
+        return new HashSet<>(Arrays.asList(this.permissions)).equals(new HashSet<>(Arrays.asList(permissions)));
+    }
+}
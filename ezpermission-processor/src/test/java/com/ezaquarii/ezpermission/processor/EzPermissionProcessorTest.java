@@ -0,0 +1,293 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.*;
+
+public class EzPermissionProcessorTest {
+
+    private static final String ACTIVITY =
+        "package android.app;\n" +
+        "public class Activity {}\n";
+
+    private static final String FRAGMENT =
+        "package android.support.v4.app;\n" +
+        "public class Fragment {}\n";
+
+    private static final String BUNDLE =
+        "package android.os;\n" +
+        "public class Bundle {}\n";
+
+    private static final String EZPERMISSION =
+        "package com.ezaquarii.ezpermission;\n" +
+        "public class EzPermission {\n" +
+        "    public static Builder of(android.app.Activity activity, int requestCode, String[] permissions) { return new Builder(); }\n" +
+        "    public static Builder of(android.support.v4.app.Fragment fragment, int requestCode, String[] permissions) { return new Builder(); }\n" +
+        "    public void call() {}\n" +
+        "    public void acceptRationale() {}\n" +
+        "    public void rejectRationale() {}\n" +
+        "    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {}\n" +
+        "    public void saveInstanceState(android.os.Bundle outState) {}\n" +
+        "    public void restoreInstanceState(android.os.Bundle inState) {}\n" +
+        "    public static class Builder {\n" +
+        "        public Builder isModal(boolean isModal) { return this; }\n" +
+        "        public Builder onRationale(Runnable onRationale) { return this; }\n" +
+        "        public Builder onGranted(Runnable onGranted) { return this; }\n" +
+        "        public Builder onDenied(Runnable onDenied) { return this; }\n" +
+        "        public Builder onDeniedPermanantly(Runnable onDeniedPermanantly) { return this; }\n" +
+        "        public Builder onCancelled(Runnable onCancelled) { return this; }\n" +
+        "        public EzPermission build() { return new EzPermission(); }\n" +
+        "    }\n" +
+        "}\n";
+
+    @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> mDiagnostics = new DiagnosticCollector<>();
+    private File mGenerated;
+
+    @Test
+    public void generatesWiringForSingleGroup() throws IOException {
+        boolean success = process("test/CameraActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class CameraActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(\"android.permission.CAMERA\") void takePhoto() {}\n" +
+            "    @OnRationale void showRationale() {}\n" +
+            "    @OnDenied void showDenied() {}\n" +
+            "}\n");
+        assertTrue(errors(), success);
+
+        String source = generated("test/CameraActivityPermissions.java");
+        assertTrue(source.contains("final class CameraActivityPermissions {"));
+        assertTrue(source.contains("static final int REQUEST_TAKE_PHOTO = " + 0x5000 + ";"));
+        assertTrue(source.contains("new String[] {\"android.permission.CAMERA\"}"));
+        assertTrue(source.contains(".onRationale(new Callback(target, TAKE_PHOTO_RATIONALE))"));
+        assertTrue(source.contains(".onDenied(new Callback(target, TAKE_PHOTO_DENIED))"));
+        assertFalse(source.contains("onDeniedPermanantly"));
+        assertTrue(source.contains("target.takePhoto();"));
+        assertTrue(source.contains("target.showRationale();"));
+        assertTrue(source.contains("void acceptTakePhotoRationale()"));
+        assertFalse(source.contains("getMethod"));
+    }
+
+    @Test
+    public void companionsAreMatchedByPermissions() throws IOException {
+        boolean success = process("test/MapActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class MapActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(value = {\"a\", \"b\"}, requestCode = 7, modal = true) void showMap() {}\n" +
+            "    @NeedsPermission(\"c\") void recordAudio() {}\n" +
+            "    @OnDeniedPermanently({\"b\", \"a\"}) void mapDenied() {}\n" +
+            "}\n");
+        assertTrue(errors(), success);
+
+        String source = generated("test/MapActivityPermissions.java");
+        assertTrue(source.contains("static final int REQUEST_SHOW_MAP = 7;"));
+        assertTrue(source.contains("static final int REQUEST_RECORD_AUDIO = " + 0x5000 + ";"));
+        assertTrue(source.contains(".isModal(true)"));
+        assertTrue(source.contains("case SHOW_MAP_DENIED_PERMANENTLY:"));
+        assertTrue(source.contains("target.mapDenied();"));
+    }
+
+    @Test
+    public void generatesWiringForFragmentHost() throws IOException {
+        boolean success = process("test/CameraFragment",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class CameraFragment extends android.support.v4.app.Fragment {\n" +
+            "    @NeedsPermission(\"android.permission.CAMERA\") void takePhoto() {}\n" +
+            "    @OnDeniedPermanently void showSettings() {}\n" +
+            "}\n");
+        assertTrue(errors(), success);
+
+        String source = generated("test/CameraFragmentPermissions.java");
+        assertTrue(source.contains("test.CameraFragment target"));
+        assertTrue(source.contains("EzPermission.of(target, REQUEST_TAKE_PHOTO"));
+        assertTrue(source.contains("target.showSettings();"));
+    }
+
+    @Test
+    public void automaticRequestCodesSkipExplicitCodes() throws IOException {
+        boolean success = process("test/MapActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class MapActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(\"a\") void first() {}\n" +
+            "    @NeedsPermission(\"b\") void second() {}\n" +
+            "    @NeedsPermission(value = \"c\", requestCode = 0x5001) void third() {}\n" +
+            "}\n");
+        assertTrue(errors(), success);
+
+        String source = generated("test/MapActivityPermissions.java");
+        assertTrue(source.contains("static final int REQUEST_FIRST = " + 0x5000 + ";"));
+        assertTrue(source.contains("static final int REQUEST_SECOND = " + 0x5002 + ";"));
+        assertTrue(source.contains("static final int REQUEST_THIRD = " + 0x5001 + ";"));
+    }
+
+    @Test
+    public void nestedHostNamesAreJoined() throws IOException {
+        boolean success = process("test/Outer",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class Outer {\n" +
+            "    public static class Inner extends android.app.Activity {\n" +
+            "        @NeedsPermission(\"a\") void run() {}\n" +
+            "    }\n" +
+            "}\n");
+        assertTrue(errors(), success);
+        assertTrue(generated("test/Outer_InnerPermissions.java").contains("test.Outer.Inner target"));
+    }
+
+    @Test
+    public void invalidMethodsAreReported() {
+        boolean success = process("test/BrokenActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class BrokenActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(\"a\") private void privateMethod() {}\n" +
+            "    @NeedsPermission(\"b\") void withParameter(int value) {}\n" +
+            "    @OnDenied void ambiguous() {}\n" +
+            "}\n");
+        assertFalse(success);
+        String errors = errors();
+        assertTrue(errors, errors.contains("must not be private or static"));
+        assertTrue(errors, errors.contains("must not take parameters"));
+        assertTrue(errors, errors.contains("must list permissions"));
+    }
+
+    @Test
+    public void unmatchedAndDuplicateCompanionsAreReported() {
+        boolean success = process("test/BrokenActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class BrokenActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(value = \"a\", requestCode = 1) void first() {}\n" +
+            "    @NeedsPermission(value = \"b\", requestCode = 1) void second() {}\n" +
+            "    @OnDenied(\"c\") void unmatched() {}\n" +
+            "    @OnRationale(\"a\") void rationale() {}\n" +
+            "    @OnRationale(\"a\") void duplicate() {}\n" +
+            "}\n");
+        assertFalse(success);
+        String errors = errors();
+        assertTrue(errors, errors.contains("Duplicate request code: 1"));
+        assertTrue(errors, errors.contains("do not match any"));
+        assertTrue(errors, errors.contains("Duplicate @OnRationale"));
+    }
+
+    @Test
+    public void requestCodesOutOfRangeAreReported() {
+        boolean success = process("test/BrokenActivity",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class BrokenActivity extends android.app.Activity {\n" +
+            "    @NeedsPermission(value = \"a\", requestCode = 0x10000) void tooLarge() {}\n" +
+            "    @NeedsPermission(value = \"b\", requestCode = 0x6000) void registry() {}\n" +
+            "    @NeedsPermission(value = \"c\", requestCode = -2) void negative() {}\n" +
+            "    @NeedsPermission(value = \"d\", requestCode = 0x5fff) void last() {}\n" +
+            "}\n");
+        assertFalse(success);
+        String errors = errors();
+        assertTrue(errors, errors.contains("Request code must be in range 0..24575: 65536"));
+        assertTrue(errors, errors.contains("Request code must be in range 0..24575: 24576"));
+        assertTrue(errors, errors.contains("Request code must be in range 0..24575: -2"));
+        assertFalse(errors, errors.contains(": 24575"));
+    }
+
+    @Test
+    public void hostMustBeActivityOrFragment() {
+        boolean success = process("test/NotAHost",
+            "package test;\n" +
+            "import com.ezaquarii.ezpermission.annotation.*;\n" +
+            "public class NotAHost {\n" +
+            "    @NeedsPermission(\"a\") void run() {}\n" +
+            "}\n");
+        assertFalse(success);
+        assertTrue(errors().contains("must be declared in Activity or support Fragment"));
+    }
+
+    private boolean process(String name, String host) {
+        mGenerated = new File(mFolder.getRoot(), "generated");
+        File classes = new File(mFolder.getRoot(), "classes");
+        assertTrue(mGenerated.mkdirs() && classes.mkdirs());
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(mDiagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+        List<JavaFileObject> sources = new ArrayList<>();
+        sources.add(new Source("android/app/Activity", ACTIVITY));
+        sources.add(new Source("android/support/v4/app/Fragment", FRAGMENT));
+        sources.add(new Source("android/os/Bundle", BUNDLE));
+        sources.add(new Source("com/ezaquarii/ezpermission/EzPermission", EZPERMISSION));
+        sources.add(new Source(name, host));
+        List<String> options = Arrays.asList(
+            "-classpath", System.getProperty("java.class.path"),
+            "-s", mGenerated.getPath(),
+            "-d", classes.getPath()
+        );
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, mDiagnostics, options, null, sources);
+        task.setProcessors(Arrays.asList(new EzPermissionProcessor()));
+        return task.call();
+    }
+
+    private String generated(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(mGenerated, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private String errors() {
+        StringBuilder errors = new StringBuilder();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics.getDiagnostics()) {
+            if(diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.append(diagnostic.getMessage(Locale.ROOT)).append('\n');
+            }
+        }
+        return errors.toString();
+    }
+
+    private static class Source extends SimpleJavaFileObject {
+
+        private final String mContent;
+
+        Source(String name, String content) {
+            super(URI.create("string:///" + name + Kind.SOURCE.extension), Kind.SOURCE);
+            mContent = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return mContent;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.ezaquarii.ezpermission;
 
+import android.content.pm.PackageManager;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 
@@ -58,6 +59,21 @@ public class BuilderTest extends Fixture {
         assertNotNull(helper.getContext());
     }
 
+    @Test
+    public void fragmentRationaleIsCheckedByFragment() {
+        when(mMockFragment.getContext()).thenReturn(mMockActivity);
+        when(mMockActivity.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+        when(mMockFragment.shouldShowRequestPermissionRationale(anyString())).thenReturn(true);
+        EzPermission helper = EzPermission.of(mMockFragment, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(mOnGranted)
+                .onRationale(mOnRationale)
+                .build();
+        helper.call();
+        assertEquals(Fsm.State.RATIONALE, helper.getCurrentState());
+        verify(mMockFragment, atLeastOnce()).shouldShowRequestPermissionRationale(anyString());
+    }
+
     @Test
     public void activityEnablesDefaultCallbacksAndProvidesContext() {
         EzPermission helper = EzPermission.of(mMockActivity, REQUEST_CODE, PERMISSIONS)
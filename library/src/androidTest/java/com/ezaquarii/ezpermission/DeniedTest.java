@@ -29,16 +29,16 @@ public class DeniedTest extends Fixture {
         when(mIsPermissionGranted.call()).thenReturn(false);
         when(mCanShowRationale.call()).thenReturn(false);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.REQUESTING, mHelper.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED});
-        assertEquals(EzPermission.Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
     }
 
     @Test
     public void grantedCallbackCalled() {
-        assertEquals(EzPermission.Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
         verify(mOnDeniedPermananetly, times(1)).run();
     }
 
@@ -52,7 +52,7 @@ public class DeniedTest extends Fixture {
     public void callAfterGrantInvokesGrantedCallback() throws Exception {
         when(mIsPermissionGranted.call()).thenReturn(true);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.GRANTED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.GRANTED, mHelper.getCurrentState());
         verify(mOnGranted, times(1)).run();
     }
 }
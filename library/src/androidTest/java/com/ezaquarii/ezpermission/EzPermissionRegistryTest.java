@@ -0,0 +1,101 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class EzPermissionRegistryTest extends Fixture {
+
+    private EzPermissionRegistry mRegistry;
+
+    @Before
+    public void setUp() throws Exception {
+        initFixture(true);
+        when(mCanShowRationale.call()).thenReturn(false);
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        mRegistry = new EzPermissionRegistry();
+        mRegistry.register(mHelper);
+    }
+
+    @Test
+    public void resultIsRoutedByRequestCode() {
+        mHelper.call();
+        assertTrue(mRegistry.onRequestPermissionsResult(REQUEST_CODE,
+                PERMISSIONS,
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED}));
+        assertEquals(Fsm.State.GRANTED, mHelper.getCurrentState());
+    }
+
+    @Test
+    public void unknownRequestCodeIsNotHandled() {
+        mHelper.call();
+        assertFalse(mRegistry.onRequestPermissionsResult(REQUEST_CODE + 1,
+                PERMISSIONS,
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED}));
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requestCodeCollision() {
+        EzPermission.of(REQUEST_CODE, PERMISSIONS)
+                .onRequest(mOnRequest)
+                .canShowRationale(mCanShowRationale)
+                .isPermissionGranted(mIsPermissionGranted)
+                .registry(mRegistry)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requestCodeMustFit16Bits() {
+        EzPermission.of(0x10000, PERMISSIONS)
+                .onRequest(mOnRequest)
+                .canShowRationale(mCanShowRationale)
+                .isPermissionGranted(mIsPermissionGranted)
+                .registry(mRegistry)
+                .build();
+    }
+
+    @Test
+    public void autoAssignedRequestCodesAreUnique() {
+        Set<Integer> requestCodes = new HashSet<>();
+        for(int i = 0; i < 20; i++) {
+            EzPermission helper = EzPermission.of(mRegistry.nextRequestCode(), PERMISSIONS)
+                    .onRequest(mOnRequest)
+                    .canShowRationale(mCanShowRationale)
+                    .isPermissionGranted(mIsPermissionGranted)
+                    .registry(mRegistry)
+                    .build();
+            assertTrue(helper.getRequestCode() <= EzPermissionRegistry.MAX_REQUEST_CODE);
+            assertTrue(requestCodes.add(helper.getRequestCode()));
+        }
+        assertEquals(21, mRegistry.size());
+    }
+
+    @Test
+    public void unregisteredHelperIsNotRouted() {
+        mRegistry.unregister(mHelper);
+        assertFalse(mRegistry.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, new int[2]));
+        assertEquals(0, mRegistry.size());
+    }
+}
@@ -39,6 +39,7 @@ public class Fixture {
     @Mock Runnable mOnDenied;
     @Mock Runnable mOnDeniedPermananetly;
     @Mock Runnable mOnRequest;
+    @Mock Runnable mOnCancelled;
     @Mock Callable<Boolean> mCanShowRationale;
     @Mock Callable<Boolean> mIsPermissionGranted;
 
@@ -52,6 +53,7 @@ public class Fixture {
                 .onDenied(mOnDenied)
                 .onDeniedPermanantly(mOnDeniedPermananetly)
                 .onRequest(mOnRequest)
+                .onCancelled(mOnCancelled)
                 .canShowRationale(mCanShowRationale)
                 .isPermissionGranted(mIsPermissionGranted)
                 .build();
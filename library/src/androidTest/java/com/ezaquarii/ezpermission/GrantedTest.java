@@ -31,7 +31,7 @@ public class GrantedTest extends Fixture {
 
     @Test
     public void grantedCallbackCalled() {
-        assertEquals(EzPermission.Fsm.State.GRANTED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.GRANTED, mHelper.getCurrentState());
         verify(mOnGranted, times(1)).run();
     }
 
@@ -45,7 +45,7 @@ public class GrantedTest extends Fixture {
     public void callAfterRevokeInvokeDeniedPermanentlyCallback() throws Exception {
         when(mIsPermissionGranted.call()).thenReturn(false);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
         verify(mOnDenied, times(0)).run();
         verify(mOnDeniedPermananetly, times(1)).run();
     }
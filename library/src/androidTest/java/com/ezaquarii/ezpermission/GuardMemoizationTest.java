@@ -0,0 +1,62 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GuardMemoizationTest extends Fixture {
+
+    @Test
+    public void guardsEvaluatedOncePerEvent() throws Exception {
+        initFixture(true);
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        when(mCanShowRationale.call()).thenReturn(false);
+        mHelper.call();
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+        verify(mIsPermissionGranted, times(1)).call();
+        verify(mCanShowRationale, times(1)).call();
+    }
+
+    @Test
+    public void guardsEvaluatedAgainOnNextEvent() throws Exception {
+        initFixture(true);
+        when(mIsPermissionGranted.call()).thenReturn(true);
+        mHelper.call();
+        mHelper.call();
+        assertEquals(Fsm.State.GRANTED, mHelper.getCurrentState());
+        verify(mIsPermissionGranted, times(2)).call();
+    }
+
+    @Test
+    public void memoizationCanBeDisabled() throws Exception {
+        mHelper = EzPermission.of(REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onRequest(mOnRequest)
+                .canShowRationale(mCanShowRationale, false)
+                .isPermissionGranted(mIsPermissionGranted, false)
+                .build();
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        when(mCanShowRationale.call()).thenReturn(false);
+        mHelper.call();
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+        verify(mIsPermissionGranted, times(3)).call();
+        verify(mCanShowRationale, times(2)).call();
+    }
+}
@@ -0,0 +1,103 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InstanceStateTest extends Fixture {
+
+    @Before
+    public void setUp() throws Exception {
+        initFixture(true);
+    }
+
+    @Test
+    public void stateIsRestored() {
+        mHelper.setCurrentState(Fsm.State.DENIED);
+        mHelper.setDebug(true);
+        Bundle state = new Bundle();
+        mHelper.saveInstanceState(state);
+        assertEquals(1, state.size());
+
+        initFixture(true);
+        mHelper.restoreInstanceState(state);
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
+        assertTrue(mHelper.getDebug());
+    }
+
+    @Test
+    public void legacyStateIsRestored() {
+        Bundle state = new Bundle();
+        state.putBoolean(EzPermission.createExtraKey(EzPermission.class.getName() + ".DEGUG", PERMISSIONS), true);
+        state.putSerializable(EzPermission.createExtraKey(EzPermission.class.getName() + ".FSM_STATE", PERMISSIONS), Fsm.State.REQUESTING);
+        mHelper.restoreInstanceState(state);
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+        assertTrue(mHelper.getDebug());
+    }
+
+    @Test
+    public void everyStateIsEncoded() {
+        for(Fsm.State state : Fsm.State.values()) {
+            assertEquals(state, EzPermission.decodeFsmState(EzPermission.encodeInstanceState(state, true)));
+            assertEquals(state, EzPermission.decodeFsmState(EzPermission.encodeInstanceState(state, false)));
+        }
+    }
+
+    @Test
+    public void unknownVersionIsNotDecoded() {
+        assertNull(EzPermission.decodeFsmState((EzPermission.INSTANCE_STATE_VERSION + 1) << 24));
+        assertNull(EzPermission.decodeFsmState(EzPermission.INSTANCE_STATE_VERSION << 24 | 0xff));
+    }
+
+    @Test
+    public void unknownVersionStartsFromStart() {
+        mHelper.setCurrentState(Fsm.State.DENIED);
+        Bundle state = new Bundle();
+        mHelper.saveInstanceState(state);
+        String key = state.keySet().iterator().next();
+        state.putInt(key, (EzPermission.INSTANCE_STATE_VERSION + 1) << 24 | Fsm.State.DENIED.ordinal());
+
+        initFixture(true);
+        mHelper.setCurrentState(Fsm.State.REQUESTING);
+        mHelper.restoreInstanceState(state);
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
+    }
+
+    @Test
+    public void parcelledStateIsSmallerThanLegacy() {
+        Bundle state = new Bundle();
+        mHelper.saveInstanceState(state);
+        Bundle legacyState = new Bundle();
+        legacyState.putBoolean(EzPermission.createExtraKey(EzPermission.class.getName() + ".DEGUG", PERMISSIONS), false);
+        legacyState.putSerializable(EzPermission.createExtraKey(EzPermission.class.getName() + ".FSM_STATE", PERMISSIONS), Fsm.State.START);
+        assertTrue(parcelledSize(state) * 4 < parcelledSize(legacyState));
+    }
+
+    private static int parcelledSize(Bundle bundle) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -33,6 +33,6 @@ public class ModalInitTest extends Fixture {
 
     @Test
     public void initializedInStart() {
-        assertEquals(EzPermission.Fsm.State.START, mHelper.getCurrentState());
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
     }
 }
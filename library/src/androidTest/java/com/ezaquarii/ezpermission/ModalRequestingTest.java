@@ -33,7 +33,7 @@ public class ModalRequestingTest extends Fixture {
         when(mCanShowRationale.call()).thenReturn(false);
         when(mIsPermissionGranted.call()).thenReturn(false);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.REQUESTING, mHelper.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
     }
 
     @Test
@@ -47,7 +47,7 @@ public class ModalRequestingTest extends Fixture {
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED} );
-        assertEquals(EzPermission.Fsm.State.START, mHelper.getCurrentState());
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
         verify(mOnDenied, times(1)).run();
         verify(mOnDeniedPermananetly, never()).run();
         verify(mOnGranted, never()).run();
@@ -59,7 +59,7 @@ public class ModalRequestingTest extends Fixture {
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED} );
-        assertEquals(EzPermission.Fsm.State.START, mHelper.getCurrentState());
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
         verify(mOnDenied, times(1)).run();
     }
 
@@ -30,7 +30,7 @@ public class ModelessRequestingTest extends Fixture {
         when(mCanShowRationale.call()).thenReturn(false);
         when(mIsPermissionGranted.call()).thenReturn(false);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.REQUESTING, mHelper.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
     }
 
     @Test
@@ -44,7 +44,7 @@ public class ModelessRequestingTest extends Fixture {
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED} );
-        assertEquals(EzPermission.Fsm.State.RATIONALE, mHelper.getCurrentState());
+        assertEquals(Fsm.State.RATIONALE, mHelper.getCurrentState());
         verify(mOnDenied, times(1)).run();
         verify(mOnDeniedPermananetly, never()).run();
         verify(mOnGranted, never()).run();
@@ -56,7 +56,7 @@ public class ModelessRequestingTest extends Fixture {
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED} );
-        assertEquals(EzPermission.Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
         verify(mOnDenied, never()).run();
         verify(mOnDeniedPermananetly, times(1)).run();
         verify(mOnGranted, never()).run();
@@ -69,7 +69,7 @@ public class ModelessRequestingTest extends Fixture {
         mHelper.onRequestPermissionsResult(REQUEST_CODE,
                 PERMISSIONS,
                 new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED} );
-        assertEquals(EzPermission.Fsm.State.GRANTED, mHelper.getCurrentState());
+        assertEquals(Fsm.State.GRANTED, mHelper.getCurrentState());
         verify(mOnDenied, never()).run();
         verify(mOnDeniedPermananetly, never()).run();
         verify(mOnGranted, times(1)).run();
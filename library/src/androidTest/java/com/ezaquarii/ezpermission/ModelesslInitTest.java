@@ -28,6 +28,6 @@ public class ModelesslInitTest extends Fixture {
 
     @Test
     public void initializedInStart() {
-        assertEquals(EzPermission.Fsm.State.RATIONALE, mHelper.getCurrentState());
+        assertEquals(Fsm.State.RATIONALE, mHelper.getCurrentState());
     }
 }
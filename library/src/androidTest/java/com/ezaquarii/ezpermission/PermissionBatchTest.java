@@ -0,0 +1,171 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PermissionBatchTest {
+
+    private static final int BATCH_REQUEST_CODE = 100;
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+    private static final String PERMISSION_C = "permission_c";
+
+    @Mock PermissionPlatform mPlatform;
+    @Mock Handler mHandler;
+    @Mock Callable<Boolean> mCanShowRationale;
+    @Mock Callable<Boolean> mIsPermissionGranted;
+    @Mock Runnable mOnGrantedFirst;
+    @Mock Runnable mOnGrantedSecond;
+    @Mock Runnable mOnDeniedPermanentlySecond;
+    @Mock Runnable mOnCancelled;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private PermissionBatch mBatch;
+    private EzPermission mFirst;
+    private EzPermission mSecond;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mCanShowRationale.call()).thenReturn(false);
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        mBatch = new PermissionBatch(mPlatform, BATCH_REQUEST_CODE, mHandler);
+        mFirst = EzPermission.of(1, new String[] {PERMISSION_A, PERMISSION_B})
+                .isModal(true)
+                .batch(mBatch)
+                .onGranted(mOnGrantedFirst)
+                .onCancelled(mOnCancelled)
+                .canShowRationale(mCanShowRationale)
+                .isPermissionGranted(mIsPermissionGranted)
+                .build();
+        mSecond = EzPermission.of(2, new String[] {PERMISSION_B, PERMISSION_C})
+                .isModal(true)
+                .batch(mBatch)
+                .onGranted(mOnGrantedSecond)
+                .onDeniedPermanantly(mOnDeniedPermanentlySecond)
+                .onCancelled(mOnCancelled)
+                .canShowRationale(mCanShowRationale)
+                .isPermissionGranted(mIsPermissionGranted)
+                .build();
+    }
+
+    @Test
+    public void requestsAreMergedIntoOneRequest() {
+        mFirst.call();
+        mSecond.call();
+        verify(mHandler, times(1)).post(any(Runnable.class));
+        verify(mPlatform, never()).requestPermissions(any(String[].class), anyInt());
+
+        mBatch.flush();
+        ArgumentCaptor<String[]> permissions = ArgumentCaptor.forClass(String[].class);
+        verify(mPlatform, times(1)).requestPermissions(permissions.capture(), eq(BATCH_REQUEST_CODE));
+        assertEquals(new HashSet<>(Arrays.asList(PERMISSION_A, PERMISSION_B, PERMISSION_C)),
+                     new HashSet<>(Arrays.asList(permissions.getValue())));
+    }
+
+    @Test
+    public void resultIsSplitBetweenHelpers() {
+        mFirst.call();
+        mSecond.call();
+        mBatch.flush();
+        mBatch.onRequestPermissionsResult(BATCH_REQUEST_CODE,
+                new String[] {PERMISSION_A, PERMISSION_B, PERMISSION_C},
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_DENIED});
+
+        assertEquals(Fsm.State.GRANTED, mFirst.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mSecond.getCurrentState());
+        verify(mOnGrantedFirst, times(1)).run();
+        verify(mOnGrantedSecond, never()).run();
+        verify(mOnDeniedPermanentlySecond, times(1)).run();
+        assertEquals(PermissionSet.of(PERMISSION_C), mSecond.getDeniedPermissionSet());
+    }
+
+    @Test
+    public void emptyResultCancelsAllHelpers() {
+        mFirst.call();
+        mSecond.call();
+        mBatch.flush();
+        mBatch.onRequestPermissionsResult(BATCH_REQUEST_CODE, new String[0], new int[0]);
+        assertEquals(Fsm.State.START, mFirst.getCurrentState());
+        assertEquals(Fsm.State.START, mSecond.getCurrentState());
+        verify(mOnCancelled, times(2)).run();
+    }
+
+    @Test
+    public void requestIsDeferredWhileBatchIsInFlight() {
+        mFirst.call();
+        mBatch.flush();
+        mSecond.call();
+        mBatch.flush();
+        verify(mPlatform, times(1)).requestPermissions(any(String[].class), anyInt());
+
+        mBatch.onRequestPermissionsResult(BATCH_REQUEST_CODE,
+                new String[] {PERMISSION_A, PERMISSION_B},
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED});
+        mBatch.flush();
+        verify(mPlatform, times(2)).requestPermissions(any(String[].class), eq(BATCH_REQUEST_CODE));
+    }
+
+    @Test
+    public void resetAbandonsBatchAndSendsDeferredRequest() {
+        mFirst.call();
+        mBatch.flush();
+        mSecond.call();
+
+        mBatch.reset();
+        assertEquals(Fsm.State.START, mFirst.getCurrentState());
+        verify(mOnCancelled, times(1)).run();
+        mBatch.flush();
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_B, PERMISSION_C}, BATCH_REQUEST_CODE);
+    }
+
+    @Test
+    public void resetCancelsScheduledFlushWhenNothingIsDeferred() {
+        mFirst.call();
+        mBatch.flush();
+        mBatch.reset();
+        verify(mHandler, times(1)).removeCallbacks(any(Runnable.class));
+
+        mSecond.call();
+        verify(mHandler, times(2)).post(any(Runnable.class));
+    }
+
+    @Test
+    public void otherRequestCodeIsIgnored() {
+        mFirst.call();
+        mBatch.flush();
+        mBatch.onRequestPermissionsResult(1,
+                new String[] {PERMISSION_A, PERMISSION_B},
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.REQUESTING, mFirst.getCurrentState());
+    }
+}
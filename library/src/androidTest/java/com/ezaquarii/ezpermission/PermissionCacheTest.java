@@ -0,0 +1,100 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PermissionCacheTest {
+
+    private static final String PERMISSION_A = Fixture.PERMISSION_A;
+    private static final String PERMISSION_B = Fixture.PERMISSION_B;
+
+    @Mock Application mApplication;
+    @Mock Context mContext;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Before
+    public void setUp() {
+        when(mContext.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_GRANTED);
+        PermissionCache.enable(mApplication);
+        PermissionCache.resetStats();
+    }
+
+    @After
+    public void tearDown() {
+        PermissionCache.disable();
+    }
+
+    @Test
+    public void enableRegistersLifecycleCallbacks() {
+        verify(mApplication, times(1)).registerActivityLifecycleCallbacks(any(Application.ActivityLifecycleCallbacks.class));
+    }
+
+    @Test
+    public void subsequentChecksServedFromCache() {
+        assertTrue(EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A, PERMISSION_B)));
+        assertTrue(EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A, PERMISSION_B)));
+        verify(mContext, times(1)).checkPermission(eq(PERMISSION_A), anyInt(), anyInt());
+        verify(mContext, times(1)).checkPermission(eq(PERMISSION_B), anyInt(), anyInt());
+        assertEquals(2, PermissionCache.getMissCount());
+        assertEquals(2, PermissionCache.getHitCount());
+    }
+
+    @Test
+    public void invalidateDropsCachedState() {
+        EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A));
+        PermissionCache.invalidate();
+        EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A));
+        verify(mContext, times(2)).checkPermission(eq(PERMISSION_A), anyInt(), anyInt());
+        assertEquals(2, PermissionCache.getMissCount());
+    }
+
+    @Test
+    public void grantResultsUpdateCache() {
+        PermissionCache.update(new String[] {PERMISSION_A, PERMISSION_B},
+                               new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_DENIED});
+        assertFalse(EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A, PERMISSION_B)));
+        verify(mContext, never()).checkPermission(anyString(), anyInt(), anyInt());
+        assertEquals(2, PermissionCache.getHitCount());
+    }
+
+    @Test
+    public void disabledCacheQueriesSystem() {
+        PermissionCache.disable();
+        EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A));
+        EzPermission.hasPermissions(mContext, Arrays.asList(PERMISSION_A));
+        verify(mContext, times(2)).checkPermission(eq(PERMISSION_A), anyInt(), anyInt());
+        assertEquals(0, PermissionCache.getHitCount());
+        assertEquals(0, PermissionCache.getMissCount());
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PermissionHistoryStoreTest {
+
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+    private static final String PERMISSION_C = "permission_c";
+    private static final int DENIED_PERMANENTLY = PermissionHistoryStore.FLAG_REQUESTED
+            | PermissionHistoryStore.FLAG_DENIED
+            | PermissionHistoryStore.FLAG_DENIED_PERMANENTLY;
+
+    @Mock Context mContext;
+    @Mock SharedPreferences mPreferences;
+    @Mock SharedPreferences.Editor mEditor;
+    @Mock Executor mExecutor;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private PermissionHistoryStore mStore;
+
+    @Before
+    public void setUp() {
+        when(mContext.getApplicationContext()).thenReturn(mContext);
+        when(mContext.getSharedPreferences(PermissionHistoryStore.PREFERENCES_NAME, Context.MODE_PRIVATE)).thenReturn(mPreferences);
+        when(mPreferences.edit()).thenReturn(mEditor);
+        when(mEditor.putInt(anyString(), anyInt())).thenReturn(mEditor);
+        Map<String, Object> stored = new HashMap<>();
+        stored.put(PERMISSION_A, DENIED_PERMANENTLY);
+        stored.put(PERMISSION_C, PermissionHistoryStore.FLAG_REQUESTED | PermissionHistoryStore.FLAG_DENIED);
+        doReturn(stored).when(mPreferences).getAll();
+        mStore = new PermissionHistoryStore(mContext, mExecutor);
+    }
+
+    /**
+     * Run tasks scheduled on executor so far, in order.
+     */
+    private void runTasks(int count) {
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(mExecutor, times(count)).execute(tasks.capture());
+        for(Runnable task : tasks.getAllValues()) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void historyIsLoadedOnFirstUse() {
+        verify(mExecutor, never()).execute(any(Runnable.class));
+
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_A));
+        verify(mPreferences, never()).getAll();
+        runTasks(1);
+        verify(mPreferences, times(1)).getAll();
+
+        assertTrue(mStore.wasDeniedPermanently(PERMISSION_A));
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_B));
+        verify(mExecutor, times(1)).execute(any(Runnable.class));
+        verify(mPreferences, times(1)).getAll();
+    }
+
+    @Test
+    public void denialIsNotPermanent() {
+        mStore.wasDeniedPermanently(PERMISSION_C);
+        runTasks(1);
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_C));
+    }
+
+    @Test
+    public void resultsAreWrittenOnExecutor() {
+        mStore.wasDeniedPermanently(PERMISSION_A);
+        runTasks(1);
+        mStore.record(new String[] {PERMISSION_A, PERMISSION_B, PERMISSION_C},
+                      new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED},
+                      PermissionSet.of(PERMISSION_B));
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_A));
+        assertTrue(mStore.wasDeniedPermanently(PERMISSION_B));
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_C));
+        verify(mEditor, never()).commit();
+
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(mExecutor, times(2)).execute(tasks.capture());
+        tasks.getAllValues().get(1).run();
+        verify(mEditor, times(1)).putInt(PERMISSION_A, PermissionHistoryStore.FLAG_REQUESTED);
+        verify(mEditor, times(1)).putInt(PERMISSION_B, DENIED_PERMANENTLY);
+        verify(mEditor, never()).putInt(eq(PERMISSION_C), anyInt());
+        verify(mEditor, times(1)).commit();
+    }
+
+    @Test
+    public void resultsRecordedBeforeLoadAreKept() {
+        mStore.record(new String[] {PERMISSION_A}, new int[] {PackageManager.PERMISSION_GRANTED}, PermissionSet.EMPTY);
+        runTasks(2);
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_A));
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_C));
+        verify(mEditor, times(1)).putInt(PERMISSION_A, PermissionHistoryStore.FLAG_REQUESTED);
+    }
+
+    @Test
+    public void unchangedResultsAreNotWritten() {
+        mStore.wasDeniedPermanently(PERMISSION_A);
+        runTasks(1);
+        mStore.record(new String[] {PERMISSION_A}, new int[] {PackageManager.PERMISSION_DENIED}, PermissionSet.of(PERMISSION_A));
+        verify(mExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void clearedHistoryIsNotLoaded() {
+        mStore.wasDeniedPermanently(PERMISSION_A);
+        mStore.clear();
+        when(mEditor.clear()).thenReturn(mEditor);
+        runTasks(2);
+        assertFalse(mStore.wasDeniedPermanently(PERMISSION_A));
+        verify(mEditor, times(1)).clear();
+    }
+
+    @Test
+    public void emptyHistoryDeniesNothing() {
+        doReturn(Collections.emptyMap()).when(mPreferences).getAll();
+        PermissionHistoryStore store = new PermissionHistoryStore(mContext, mExecutor);
+        store.wasDeniedPermanently(PERMISSION_A);
+        runTasks(1);
+        assertFalse(store.wasDeniedPermanently(PERMISSION_A));
+    }
+}
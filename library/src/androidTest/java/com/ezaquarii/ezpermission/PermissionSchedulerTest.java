@@ -0,0 +1,172 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PermissionSchedulerTest {
+
+    private static final int SCHEDULER_REQUEST_CODE = 200;
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+
+    @Mock PermissionPlatform mPlatform;
+    @Mock Handler mHandler;
+    @Mock Callable<Boolean> mCanShowRationale;
+    @Mock Callable<Boolean> mIsPermissionGranted;
+    @Mock Runnable mOnGranted;
+    @Mock Runnable mOnCancelled;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private PermissionScheduler mScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mCanShowRationale.call()).thenReturn(false);
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        mScheduler = new PermissionScheduler(mPlatform, SCHEDULER_REQUEST_CODE, mHandler);
+    }
+
+    private EzPermission build(int requestCode, String[] permissions, int priority) {
+        return EzPermission.of(requestCode, permissions)
+                .isModal(true)
+                .scheduler(mScheduler, priority)
+                .onGranted(mOnGranted)
+                .onCancelled(mOnCancelled)
+                .canShowRationale(mCanShowRationale)
+                .isPermissionGranted(mIsPermissionGranted)
+                .build();
+    }
+
+    private void runDispatch() {
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler, atLeastOnce()).post(dispatch.capture());
+        dispatch.getValue().run();
+    }
+
+    @Test
+    public void requestsAreSentOneByOneByPriority() {
+        EzPermission low = build(1, new String[] {PERMISSION_A}, 0);
+        EzPermission high = build(2, new String[] {PERMISSION_B}, 10);
+        low.call();
+        high.call();
+        verify(mPlatform, never()).requestPermissions(any(String[].class), anyInt());
+        assertEquals(2, mScheduler.getQueueDepth());
+
+        runDispatch();
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_B}, SCHEDULER_REQUEST_CODE);
+        verify(mPlatform, never()).requestPermissions(new String[] {PERMISSION_A}, SCHEDULER_REQUEST_CODE);
+
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE, new String[] {PERMISSION_B}, new int[] {PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, high.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, low.getCurrentState());
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_A}, SCHEDULER_REQUEST_CODE);
+        assertEquals(2, mScheduler.getRequestCount());
+        assertEquals(2, mScheduler.getMaxQueueDepth());
+    }
+
+    @Test
+    public void duplicateRequestsAreCoalesced() {
+        EzPermission first = build(1, new String[] {PERMISSION_A, PERMISSION_B}, 0);
+        EzPermission second = build(2, new String[] {PERMISSION_B, PERMISSION_A}, 0);
+        first.call();
+        second.call();
+        assertEquals(1, mScheduler.getQueueDepth());
+        assertEquals(1, mScheduler.getCoalescedCount());
+
+        runDispatch();
+        verify(mPlatform, times(1)).requestPermissions(any(String[].class), eq(SCHEDULER_REQUEST_CODE));
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE,
+                new String[] {PERMISSION_A, PERMISSION_B},
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, first.getCurrentState());
+        assertEquals(Fsm.State.GRANTED, second.getCurrentState());
+        verify(mOnGranted, times(2)).run();
+    }
+
+    @Test
+    public void grantedPermissionsAreNotRequestedAgain() {
+        EzPermission first = build(1, new String[] {PERMISSION_A}, 0);
+        EzPermission second = build(2, new String[] {PERMISSION_A, PERMISSION_B}, 0);
+        first.call();
+        second.call();
+        runDispatch();
+
+        when(mPlatform.isGranted(PERMISSION_A)).thenReturn(true);
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE, new String[] {PERMISSION_A}, new int[] {PackageManager.PERMISSION_GRANTED});
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_B}, SCHEDULER_REQUEST_CODE);
+
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE, new String[] {PERMISSION_B}, new int[] {PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, first.getCurrentState());
+        assertEquals(Fsm.State.GRANTED, second.getCurrentState());
+    }
+
+    @Test
+    public void emptyResultCancelsRequestAndSendsNext() {
+        EzPermission first = build(1, new String[] {PERMISSION_A}, 0);
+        EzPermission second = build(2, new String[] {PERMISSION_B}, 0);
+        first.call();
+        second.call();
+        runDispatch();
+
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE, new String[0], new int[0]);
+        assertEquals(Fsm.State.START, first.getCurrentState());
+        verify(mOnCancelled, times(1)).run();
+        assertEquals(Fsm.State.REQUESTING, second.getCurrentState());
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_B}, SCHEDULER_REQUEST_CODE);
+    }
+
+    @Test
+    public void resetAbandonsRequestAndSendsNext() {
+        EzPermission first = build(1, new String[] {PERMISSION_A}, 0);
+        EzPermission second = build(2, new String[] {PERMISSION_B}, 0);
+        first.call();
+        second.call();
+        runDispatch();
+
+        mScheduler.reset();
+        assertEquals(Fsm.State.START, first.getCurrentState());
+        verify(mOnCancelled, times(1)).run();
+        runDispatch();
+        verify(mPlatform, times(1)).requestPermissions(new String[] {PERMISSION_B}, SCHEDULER_REQUEST_CODE);
+
+        mScheduler.onRequestPermissionsResult(SCHEDULER_REQUEST_CODE, new String[] {PERMISSION_B}, new int[] {PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.GRANTED, second.getCurrentState());
+    }
+
+    @Test
+    public void otherRequestCodeIsIgnored() {
+        EzPermission helper = build(1, new String[] {PERMISSION_A}, 0);
+        helper.call();
+        runDispatch();
+        mScheduler.onRequestPermissionsResult(1, new String[] {PERMISSION_A}, new int[] {PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.REQUESTING, helper.getCurrentState());
+    }
+}
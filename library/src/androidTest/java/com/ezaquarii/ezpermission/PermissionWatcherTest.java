@@ -0,0 +1,150 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Application;
+import android.content.pm.PackageManager;
+import android.support.v4.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PermissionWatcherTest {
+
+    private static final String PERMISSION_A = "permission_a";
+    private static final String PERMISSION_B = "permission_b";
+    private static final String PERMISSION_C = "permission_c";
+
+    @Mock PermissionPlatform mPlatform;
+    @Mock FragmentActivity mActivity;
+    @Mock Callable<Boolean> mIsPermissionGranted;
+    @Mock Runnable mOnGranted;
+    @Mock Runnable mOnDeniedPermanently;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private PermissionWatcher mWatcher;
+    private EzPermission mFirst;
+    private EzPermission mSecond;
+
+    @Before
+    public void setUp() {
+        when(mActivity.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_GRANTED);
+        when(mPlatform.isGranted(anyString())).thenReturn(true);
+        mWatcher = new PermissionWatcher(mPlatform);
+        mFirst = EzPermission.of(mActivity, 1, new String[] {PERMISSION_A, PERMISSION_B})
+                .watcher(mWatcher)
+                .onGranted(mOnGranted)
+                .onDeniedPermanantly(mOnDeniedPermanently)
+                .build();
+        mSecond = EzPermission.of(mActivity, 2, new String[] {PERMISSION_B, PERMISSION_C})
+                .watcher(mWatcher)
+                .onGranted(mOnGranted)
+                .onDeniedPermanantly(mOnDeniedPermanently)
+                .build();
+        mFirst.call();
+        mSecond.call();
+        reset(mOnGranted, mActivity);
+    }
+
+    @Test
+    public void sharedPermissionsAreCheckedOnce() {
+        mWatcher.onResume();
+        verify(mPlatform, times(1)).isGranted(PERMISSION_A);
+        verify(mPlatform, times(1)).isGranted(PERMISSION_B);
+        verify(mPlatform, times(1)).isGranted(PERMISSION_C);
+        verify(mActivity, never()).checkPermission(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void unchangedHelpersAreNotRevalidated() {
+        assertEquals(0, mWatcher.onResume());
+        verify(mOnGranted, never()).run();
+        verify(mOnDeniedPermanently, never()).run();
+    }
+
+    @Test
+    public void onlyChangedHelpersAreRevalidated() {
+        when(mPlatform.isGranted(PERMISSION_C)).thenReturn(false);
+        assertEquals(1, mWatcher.onResume());
+        assertEquals(Fsm.State.GRANTED, mFirst.getCurrentState());
+        assertEquals(Fsm.State.DENIED, mSecond.getCurrentState());
+        verify(mOnDeniedPermanently, times(1)).run();
+
+        when(mPlatform.isGranted(PERMISSION_C)).thenReturn(true);
+        assertEquals(1, mWatcher.onResume());
+        assertEquals(Fsm.State.GRANTED, mSecond.getCurrentState());
+        verify(mOnGranted, times(1)).run();
+    }
+
+    @Test
+    public void helpersInOtherStatesAreNotChecked() {
+        mFirst.setCurrentState(Fsm.State.START);
+        mSecond.setCurrentState(Fsm.State.REQUESTING);
+        assertEquals(0, mWatcher.onResume());
+        verify(mPlatform, never()).isGranted(anyString());
+        assertEquals(Fsm.State.START, mFirst.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, mSecond.getCurrentState());
+    }
+
+    @Test
+    public void customGuardIsEvaluatedByHelper() throws Exception {
+        when(mIsPermissionGranted.call()).thenReturn(true);
+        EzPermission custom = EzPermission.of(mActivity, 3, new String[] {PERMISSION_C})
+                .watcher(mWatcher)
+                .onDeniedPermanantly(mOnDeniedPermanently)
+                .isPermissionGranted(mIsPermissionGranted)
+                .build();
+        custom.call();
+        mWatcher.unwatch(mFirst);
+        mWatcher.unwatch(mSecond);
+
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        assertEquals(1, mWatcher.onResume());
+        verify(mPlatform, never()).isGranted(anyString());
+        assertEquals(Fsm.State.DENIED, custom.getCurrentState());
+    }
+
+    @Test
+    public void cachedStateIsInvalidatedBeforeCheck() {
+        PermissionCache.enable(mock(Application.class));
+        try {
+            PermissionWatcher watcher = new PermissionWatcher(mActivity);
+            when(mActivity.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_GRANTED);
+            EzPermission helper = EzPermission.of(mActivity, 3, new String[] {PERMISSION_C})
+                    .watcher(watcher)
+                    .onDeniedPermanantly(mOnDeniedPermanently)
+                    .build();
+            helper.call();
+            assertEquals(Fsm.State.GRANTED, helper.getCurrentState());
+
+            when(mActivity.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+            assertEquals(1, watcher.onResume());
+            assertEquals(Fsm.State.DENIED, helper.getCurrentState());
+            verify(mOnDeniedPermanently, times(1)).run();
+        } finally {
+            PermissionCache.disable();
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class RationaleTest extends Fixture {
         when(mCanShowRationale.call()).thenReturn(true);
         when(mIsPermissionGranted.call()).thenReturn(false);
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.RATIONALE, mHelper.getCurrentState());
+        assertEquals(Fsm.State.RATIONALE, mHelper.getCurrentState());
     }
 
     @Test
@@ -39,13 +39,13 @@ public class RationaleTest extends Fixture {
     @Test
     public void canRejectRationale() {
         mHelper.rejectRationale();
-        assertEquals(EzPermission.Fsm.State.START, mHelper.getCurrentState());
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
     }
 
     @Test
     public void canAcceptModalRationale() {
         mHelper.call();
-        assertEquals(EzPermission.Fsm.State.REQUESTING, mHelper.getCurrentState());
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
         verify(mOnRequest, times(1)).run();
     }
 
@@ -53,7 +53,7 @@ public class RationaleTest extends Fixture {
     public void cannotRejectNonModalRationale() {
         mHelper.setIsModalRationale(false);
         mHelper.rejectRationale();
-        assertEquals(EzPermission.Fsm.State.RATIONALE, mHelper.getCurrentState());
+        assertEquals(Fsm.State.RATIONALE, mHelper.getCurrentState());
         verify(mOnRequest, times(0)).run();
     }
 }
@@ -0,0 +1,99 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RequestResultTest extends Fixture {
+
+    @Before
+    public void setUp() throws Exception {
+        initFixture(true);
+        when(mCanShowRationale.call()).thenReturn(false);
+        when(mIsPermissionGranted.call()).thenReturn(false);
+        mHelper.call();
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+    }
+
+    @Test
+    public void noDeniedPermissionsBeforeResult() {
+        assertTrue(mHelper.getDeniedPermissions().isEmpty());
+        assertTrue(mHelper.getDeniedPermissionSet().isEmpty());
+        assertFalse(mHelper.isPermissionDenied(PERMISSION_A));
+    }
+
+    @Test
+    public void resultsInDifferentOrder() {
+        mHelper.onRequestPermissionsResult(REQUEST_CODE,
+                new String[] {PERMISSION_B, PERMISSION_A},
+                new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(Collections.singletonList(PERMISSION_B), mHelper.getDeniedPermissions());
+        assertTrue(mHelper.isPermissionDenied(PERMISSION_B));
+        assertFalse(mHelper.isPermissionDenied(PERMISSION_A));
+    }
+
+    @Test
+    public void missingResultIsDenial() {
+        mHelper.onRequestPermissionsResult(REQUEST_CODE,
+                new String[] {PERMISSION_A, "permission_unknown"},
+                new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED});
+        assertEquals(Fsm.State.DENIED, mHelper.getCurrentState());
+        assertEquals(PermissionSet.of(PERMISSION_B), mHelper.getDeniedPermissionSet());
+    }
+
+    @Test
+    public void deniedPermissionsReusedUntilResultChanges() {
+        int[] denied = new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED};
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, denied);
+        PermissionSet first = mHelper.getDeniedPermissionSet();
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, denied);
+        assertSame(first, mHelper.getDeniedPermissionSet());
+        mHelper.onRequestPermissionsResult(REQUEST_CODE,
+                PERMISSIONS,
+                new int[] {PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_DENIED});
+        assertEquals(PermissionSet.of(PERMISSIONS), mHelper.getDeniedPermissionSet());
+    }
+
+    @Test
+    public void emptyResultCancelsRequest() {
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, new String[0], new int[0]);
+        assertEquals(Fsm.State.START, mHelper.getCurrentState());
+        verify(mOnCancelled, times(1)).run();
+        verify(mOnDenied, never()).run();
+        verify(mOnDeniedPermananetly, never()).run();
+    }
+
+    @Test
+    public void requestCanBeRepeatedAfterCancellation() {
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, new String[0], new int[0]);
+        mHelper.call();
+        assertEquals(Fsm.State.REQUESTING, mHelper.getCurrentState());
+        verify(mOnRequest, times(2)).run();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resultSizeMismatch() {
+        mHelper.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, new int[] {PackageManager.PERMISSION_GRANTED});
+    }
+}
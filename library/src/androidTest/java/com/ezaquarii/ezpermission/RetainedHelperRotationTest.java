@@ -0,0 +1,106 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
+import android.support.test.runner.lifecycle.Stage;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rotates real {@link RetainedHostActivity}, so retained fragment is restored
+ * by fragment manager rather than returned by a mock.
+ */
+public class RetainedHelperRotationTest {
+
+    private static final long ROTATION_TIMEOUT_MS = 5000;
+
+    @Rule public ActivityTestRule<RetainedHostActivity> mActivityRule = new ActivityTestRule<>(RetainedHostActivity.class);
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    private RetainedHostActivity getResumedActivity() {
+        final RetainedHostActivity[] resumed = new RetainedHostActivity[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for(Activity activity : ActivityLifecycleMonitorRegistry.getInstance().getActivitiesInStage(Stage.RESUMED)) {
+                    resumed[0] = (RetainedHostActivity) activity;
+                }
+            }
+        });
+        return resumed[0];
+    }
+
+    private RetainedHostActivity rotate(final RetainedHostActivity activity) throws InterruptedException {
+        final boolean isPortrait = activity.getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.setRequestedOrientation(isPortrait ? ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE
+                                                            : ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+            }
+        });
+        final long deadline = System.currentTimeMillis() + ROTATION_TIMEOUT_MS;
+        while(System.currentTimeMillis() < deadline) {
+            mInstrumentation.waitForIdleSync();
+            final RetainedHostActivity rotated = getResumedActivity();
+            if(rotated != null && rotated != activity) {
+                return rotated;
+            }
+            Thread.sleep(50);
+        }
+        fail("Activity was not recreated after rotation");
+        return null;
+    }
+
+    @Test
+    public void helperSurvivesRotation() throws InterruptedException {
+        RetainedHostActivity activity = mActivityRule.getActivity();
+        assertNotNull(activity.mHelper);
+
+        RetainedHostActivity rotated = rotate(activity);
+        assertNotSame(activity, rotated);
+        assertSame(activity.mHelper, rotated.mHelper);
+
+        RetainedHostActivity rotatedBack = rotate(rotated);
+        assertSame(activity.mHelper, rotatedBack.mHelper);
+    }
+
+    @Test
+    public void helperCannotBeBuiltBeforeActivityIsCreated() {
+        final Exception[] error = new Exception[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new RetainedHostActivity().buildHelper();
+                } catch(IllegalStateException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        assertNotNull(error[0]);
+    }
+}
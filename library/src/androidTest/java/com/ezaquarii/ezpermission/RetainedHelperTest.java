@@ -0,0 +1,221 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.view.Window;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RetainedHelperTest {
+
+    private static final int REQUEST_CODE = 42;
+    private static final String[] PERMISSIONS = new String[] {"permission_a", "permission_b"};
+    private static final int[] GRANTED = new int[] {PackageManager.PERMISSION_GRANTED, PackageManager.PERMISSION_GRANTED};
+
+    @Mock FragmentActivity mActivity;
+    @Mock FragmentManager mFragmentManager;
+    @Mock FragmentTransaction mTransaction;
+    @Mock Runnable mOnGranted;
+    @Mock Runnable mOnRotatedGranted;
+    @Mock Runnable mOnRationale;
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private RetainedHelperFragment mRetainer;
+
+    @Before
+    public void setUp() {
+        mRetainer = spy(new RetainedHelperFragment());
+        doReturn(mActivity).when(mRetainer).getContext();
+        doNothing().when(mRetainer).requestPermissions(any(String[].class), anyInt());
+        when(mActivity.getWindow()).thenReturn(mock(Window.class));
+        when(mActivity.getSupportFragmentManager()).thenReturn(mFragmentManager);
+        when(mActivity.checkPermission(anyString(), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+        when(mFragmentManager.findFragmentByTag(RetainedHelperFragment.TAG)).thenReturn(mRetainer);
+    }
+
+    private EzPermission build(Runnable onGranted) {
+        return EzPermission.of(mActivity, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(onGranted)
+                .retained()
+                .build();
+    }
+
+    @Test
+    public void helperSurvivesRotationDuringRequest() {
+        EzPermission helper = build(mOnGranted);
+        helper.call();
+        assertEquals(Fsm.State.REQUESTING, helper.getCurrentState());
+        verify(mRetainer, times(1)).requestPermissions(PERMISSIONS, REQUEST_CODE);
+
+        mRetainer.onDetach();
+        EzPermission rotated = build(mOnRotatedGranted);
+        assertSame(helper, rotated);
+        assertEquals(Fsm.State.REQUESTING, rotated.getCurrentState());
+
+        mRetainer.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, GRANTED);
+        assertEquals(Fsm.State.GRANTED, rotated.getCurrentState());
+        verify(mOnRotatedGranted, times(1)).run();
+        verify(mOnGranted, never()).run();
+    }
+
+    @Test
+    public void outcomeDeliveredWhileDetachedIsReplayedToNewHost() {
+        EzPermission helper = build(mOnGranted);
+        helper.call();
+        mRetainer.onDetach();
+        mRetainer.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, GRANTED);
+        assertEquals(Fsm.State.GRANTED, helper.getCurrentState());
+        verify(mOnGranted, never()).run();
+
+        build(mOnRotatedGranted);
+        verify(mOnRotatedGranted, times(1)).run();
+        build(mOnRotatedGranted);
+        verify(mOnRotatedGranted, times(1)).run();
+        verify(mOnGranted, never()).run();
+    }
+
+    @Test
+    public void rebuiltHelperReplaysPendingOutcome() {
+        EzPermission helper = build(mOnGranted);
+        helper.call();
+        mRetainer.onDetach();
+        mRetainer.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, GRANTED);
+
+        EzPermission rebuilt = EzPermission.of(mActivity, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(mOnRotatedGranted)
+                .onRationale(mOnRationale)
+                .retained()
+                .build();
+        assertNotSame(helper, rebuilt);
+        verify(mOnRotatedGranted, times(1)).run();
+        verify(mOnRationale, never()).run();
+    }
+
+    @Test
+    public void reattachedHelperUsesOptionsOfNewHost() {
+        EzPermission helper = build(mOnGranted);
+        mRetainer.onDetach();
+        PermissionHistory history = mock(PermissionHistory.class);
+        when(history.wasDeniedPermanently(anyString())).thenReturn(true);
+        EzPermission rotated = EzPermission.of(mActivity, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(mOnRotatedGranted)
+                .history(history)
+                .retained()
+                .build();
+        assertSame(helper, rotated);
+        rotated.call();
+        assertEquals(Fsm.State.DENIED, rotated.getCurrentState());
+        verify(mRetainer, never()).requestPermissions(any(String[].class), anyInt());
+    }
+
+    @Test
+    public void savedStateDoesNotOverwriteRetainedState() {
+        EzPermission helper = build(mOnGranted);
+        helper.call();
+        Bundle outState = mock(Bundle.class);
+        helper.saveInstanceState(outState);
+
+        EzPermission rotated = build(mOnRotatedGranted);
+        mRetainer.onRequestPermissionsResult(REQUEST_CODE, PERMISSIONS, GRANTED);
+        rotated.restoreInstanceState(outState);
+        assertEquals(Fsm.State.GRANTED, rotated.getCurrentState());
+        verify(outState, never()).getInt(anyString(), anyInt());
+    }
+
+    @Test
+    public void changedCallbacksRebuildHelperKeepingState() {
+        EzPermission helper = build(mOnGranted);
+        helper.call();
+        EzPermission rebuilt = EzPermission.of(mActivity, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(mOnRotatedGranted)
+                .onRationale(mOnRationale)
+                .retained()
+                .build();
+        assertNotSame(helper, rebuilt);
+        assertEquals(Fsm.State.REQUESTING, rebuilt.getCurrentState());
+        assertSame(rebuilt, mRetainer.get(REQUEST_CODE));
+    }
+
+    @Test
+    public void retainerIsAddedWhenMissing() {
+        when(mFragmentManager.findFragmentByTag(RetainedHelperFragment.TAG)).thenReturn(null);
+        when(mFragmentManager.beginTransaction()).thenReturn(mTransaction);
+        when(mTransaction.add(any(RetainedHelperFragment.class), eq(RetainedHelperFragment.TAG))).thenReturn(mTransaction);
+        build(mOnGranted);
+        verify(mTransaction, times(1)).commitNow();
+    }
+
+    @Test
+    public void retainerIsAddedAfterStateIsSaved() {
+        when(mFragmentManager.findFragmentByTag(RetainedHelperFragment.TAG)).thenReturn(null);
+        when(mFragmentManager.isStateSaved()).thenReturn(true);
+        when(mFragmentManager.beginTransaction()).thenReturn(mTransaction);
+        when(mTransaction.add(any(RetainedHelperFragment.class), eq(RetainedHelperFragment.TAG))).thenReturn(mTransaction);
+        build(mOnGranted);
+        verify(mTransaction, never()).commitNow();
+        verify(mTransaction, times(1)).commitNowAllowingStateLoss();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retainedHelperRequiresFragmentActivity() {
+        EzPermission.of(mock(Activity.class), REQUEST_CODE, PERMISSIONS)
+                .onGranted(mOnGranted)
+                .retained()
+                .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainedHelperRequiresAttachedActivity() {
+        when(mActivity.getWindow()).thenReturn(null);
+        build(mOnGranted);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainedHelperRequiresAttachedFragment() {
+        EzPermission.of(mock(Fragment.class), REQUEST_CODE, PERMISSIONS)
+                .onGranted(mOnGranted)
+                .retained()
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retainedHelperRequiresDefaultGuards() {
+        EzPermission.of(mActivity, REQUEST_CODE, PERMISSIONS)
+                .onGranted(mOnGranted)
+                .onRequest(mOnRationale)
+                .retained()
+                .build();
+    }
+}
@@ -0,0 +1,47 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+
+/**
+ * Activity building retained helper the way application does, in {@link #onCreate(Bundle)}.
+ */
+public class RetainedHostActivity extends FragmentActivity {
+
+    static final int REQUEST_CODE = 42;
+    static final String[] PERMISSIONS = new String[] {"permission_a"};
+
+    EzPermission mHelper;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mHelper = buildHelper();
+    }
+
+    EzPermission buildHelper() {
+        return EzPermission.of(this, REQUEST_CODE, PERMISSIONS)
+                .isModal(true)
+                .onGranted(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                })
+                .retained()
+                .build();
+    }
+}
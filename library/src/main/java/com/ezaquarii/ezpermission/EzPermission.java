@@ -23,17 +23,14 @@ import android.os.Bundle;
 import android.provider.Settings;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.ContextCompat;
+import android.support.v4.app.FragmentActivity;
 import android.util.Log;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * This helper allows to dispatch an action that requires permissions.
@@ -45,38 +42,26 @@ import java.util.concurrent.Callable;
  * want to switch entire screen into certain mode.
  *
  * It handles permission revocation and grant via system settings too.
+ *
+ * Permission flow itself is implemented by {@link PermissionFlow} from the
+ * platform independent core module; this class binds it to Android.
  */
-
-/*
-@startuml
-
-[*] --> START : [isRationaleModal]
-[*] --> RATIONALE : [!isRationaleModal]
-START --> RATIONALE : DISPATCH\n[!isGranted &&\ncanShowRationale]
-START --> REQUESTING : DISPATCH\n[!isGranted &&\n!canShowRationale]
-START --> GRANTED : DISPATCH\n[isGranted]
-RATIONALE ---> REQUESTING : DISPATCH
-REQUESTING --> GRANTED : GRANTED
-REQUESTING --> START : DENIED / onDenied()\n[canShowRationale &&\nisRationaleModal]
-REQUESTING --> RATIONALE : DENIED / onDenied()\n[canShowRationale &&\n!isRationaleModal]
-REQUESTING --> DENIED : DENIED\n[!canShowRationale]
-GRANTED --> GRANTED : DISPATCH\n[isGranted]
-GRANTED --> DENIED : DISPATCH\n[!isGranted]
-DENIED --> DENIED : DISPATCH\n[!isGranted]
-DENIED --> GRANTED : DISPATCH\n[isGranted]
-
-GRANTED : entry: onGranted()
-RATIONALE : entry: onRationale()
-REQUESTING : entry: onRequest()
-DENIED : entry: onDeniedPermanently()
-
-@enduml
-*/
 public class EzPermission {
 
     private static final String TAG = EzPermission.class.getSimpleName();
     private static final String EXTRA_INSTANCE_STATE_DEBUG = EzPermission.class.getName() + ".DEGUG";
     private static final String EXTRA_INSTANCE_STATE_FSM_STATE = EzPermission.class.getName() + ".FSM_STATE";
+    private static final String EXTRA_INSTANCE_STATE_PREFIX = "ezp:";
+
+    /**
+     * Instance state is packed into a single int: format version in the highest byte,
+     * debug flag in bit 8 and state machine state ordinal in the lowest byte.
+     */
+    static final int INSTANCE_STATE_VERSION = 1;
+    private static final int INSTANCE_STATE_VERSION_SHIFT = 24;
+    private static final int INSTANCE_STATE_DEBUG = 1 << 8;
+    private static final int INSTANCE_STATE_FSM_STATE_MASK = 0xff;
+    private static final Fsm.State[] FSM_STATES = Fsm.State.values();
 
     public static class Builder {
 
@@ -90,8 +75,22 @@ public class EzPermission {
         private Runnable mOnRationale = null;
         private Runnable mOnDenied = null;
         private Runnable mOnDeniedPermanently = null;
+        private Runnable mOnCancelled = null;
         private Callable<Boolean> mCanShowRationale = null;
         private Callable<Boolean> mIsPermissionGranted = null;
+        private boolean mMemoizeCanShowRationale = true;
+        private boolean mMemoizeIsPermissionGranted = true;
+        private PermissionBatch mBatch = null;
+        private PermissionScheduler mScheduler = null;
+        private int mPriority = 0;
+        private EzPermissionRegistry mRegistry = null;
+        private PermissionWatcher mWatcher = null;
+        private PermissionHistory mHistory = null;
+        private PartialGrantListener mPartialGrantListener = null;
+        private Executor mEvaluationExecutor = null;
+        private Executor mDeliveryExecutor = null;
+        private boolean mConcurrent = false;
+        private boolean mRetained = false;
 
         Builder(Activity activity, int requestCode, String[] permissions) {
             mActivity = activity;
@@ -135,310 +134,378 @@ public class EzPermission {
             return this;
         }
 
+        /**
+         * Set callback invoked when permission request is interrupted and system
+         * delivers empty results. State machine returns to initial state, so
+         * permissions can be requested again.
+         */
+        public Builder onCancelled(Runnable onCancelled) {
+            mOnCancelled = onCancelled;
+            return this;
+        }
+
         public Builder canShowRationale(Callable<Boolean> canShowRationale) {
+            return canShowRationale(canShowRationale, true);
+        }
+
+        /**
+         * Set custom rationale guard.
+         *
+         * @param canShowRationale Should return true if rationale should be shown, false otherwise
+         * @param memoize If true, guard is evaluated at most once per state machine event;
+         *                pass false if guard result can change while event is being processed
+         */
+        public Builder canShowRationale(Callable<Boolean> canShowRationale, boolean memoize) {
             mCanShowRationale = canShowRationale;
+            mMemoizeCanShowRationale = memoize;
             return this;
         }
 
         public Builder isPermissionGranted(Callable<Boolean> isPermissionGranted) {
+            return isPermissionGranted(isPermissionGranted, true);
+        }
+
+        /**
+         * Set custom permission guard.
+         *
+         * @param isPermissionGranted Should return true if permissions are granted, false otherwise
+         * @param memoize If true, guard is evaluated at most once per state machine event;
+         *                pass false if guard result can change while event is being processed
+         */
+        public Builder isPermissionGranted(Callable<Boolean> isPermissionGranted, boolean memoize) {
             mIsPermissionGranted = isPermissionGranted;
+            mMemoizeIsPermissionGranted = memoize;
             return this;
         }
 
-        public EzPermission build() {
-            boolean noContext = mActivity == null && mFragment == null;
-            if(noContext) {
-                if(mOnRequest == null || mIsPermissionGranted == null || mCanShowRationale == null) {
-                    throw new IllegalArgumentException("You must provide activity or fragment or onRequest, isPermissionGranted and canShowRationale.");
-                }
-            }
-
-            return new EzPermission(mActivity,
-                                    mFragment,
-                                    mRequestCode,
-                                    mIsModal,
-                                    mPermissions,
-                                    mOnGranted,
-                                    mOnRationale,
-                                    mOnDenied,
-                                    mOnDeniedPermanently,
-                                    mOnRequest,
-                                    mCanShowRationale,
-                                    mIsPermissionGranted);
+        /**
+         * Request permissions together with other helpers using the same batch.
+         * Custom {@link #onRequest(Runnable)} takes precedence over batch.
+         *
+         * @param batch Batch coordinating permission requests
+         */
+        public Builder batch(PermissionBatch batch) {
+            mBatch = batch;
+            return this;
         }
 
-    }
-
-    private interface Predicate<T> {
-        boolean test(T item);
-    }
+        /**
+         * Send permission requests through scheduler, one at a time, with default priority.
+         *
+         * @param scheduler Scheduler of host activity or fragment
+         */
+        public Builder scheduler(PermissionScheduler scheduler) {
+            return scheduler(scheduler, 0);
+        }
+
+        /**
+         * Send permission requests through scheduler, one at a time. Custom
+         * {@link #onRequest(Runnable)} takes precedence over scheduler; it cannot
+         * be combined with {@link #batch(PermissionBatch)}.
+         *
+         * @param scheduler Scheduler of host activity or fragment
+         * @param priority Request priority; higher priority requests are sent first
+         */
+        public Builder scheduler(PermissionScheduler scheduler, int priority) {
+            mScheduler = scheduler;
+            mPriority = priority;
+            return this;
+        }
 
-    static class Fsm {
+        /**
+         * Register built helper in registry, which will route permission request results to it.
+         *
+         * @param registry Registry of host activity or fragment
+         */
+        public Builder registry(EzPermissionRegistry registry) {
+            mRegistry = registry;
+            return this;
+        }
 
-        enum State {
-            START,
-            RATIONALE,
-            REQUESTING,
-            GRANTED,
-            DENIED
+        /**
+         * Let watcher revalidate built helper when permissions are changed in system settings.
+         *
+         * @param watcher Watcher of host activity or fragment
+         */
+        public Builder watcher(PermissionWatcher watcher) {
+            mWatcher = watcher;
+            return this;
         }
 
-        enum Event {
-            DISPATCH,
-            GRANTED,
-            DENIED,
-            REJECT
+        /**
+         * Record request results in persistent history. Permissions denied permanently
+         * in the past are not requested again after process restart; helper goes
+         * straight to denied state instead. History can be shared by all helpers.
+         *
+         * @param history Request history, ex. {@link PermissionHistoryStore}
+         */
+        public Builder history(PermissionHistory history) {
+            mHistory = history;
+            return this;
         }
 
-        private static class Row {
-            Row(State from, Event event, Callable<Boolean> guard, State to) {
-                this.event = event;
-                this.guard = guard;
-                this.from = from;
-                this.to = to;
-            }
+        /**
+         * Track every permission separately and report partial grants and revocations,
+         * so features that need only some of permissions can start early. Aggregate
+         * callbacks, like {@link #onGranted(Runnable)}, work as before.
+         *
+         * @param listener Listener receiving changes of individual permissions
+         */
+        public Builder partialGrant(PartialGrantListener listener) {
+            mPartialGrantListener = listener;
+            return this;
+        }
 
-            Event event;
-            Callable<Boolean> guard;
-            State from;
-            State to;
-
-            boolean evaluate(State currentState, Event event) {
-                try {
-                    return this.from == currentState &&
-                            this.event == event &&
-                            (guard == null || guard.call());
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
+        /**
+         * Evaluate guards of {@link EzPermission#call()} asynchronously. Permission checks
+         * are done on evaluation executor; transitions and callbacks are delivered on
+         * delivery executor. Custom guards must be safe to call from evaluation executor.
+         *
+         * @param evaluationExecutor Executor evaluating guards, ex. {@code AsyncTask.THREAD_POOL_EXECUTOR}
+         * @param mainExecutor Executor running on main thread
+         */
+        public Builder async(Executor evaluationExecutor, Executor mainExecutor) {
+            mEvaluationExecutor = evaluationExecutor;
+            mDeliveryExecutor = mainExecutor;
+            return this;
         }
 
-        private static class StatePair {
+        /**
+         * Allow calling helper from many threads at once, ex. from workers and
+         * main thread. Transitions are applied atomically and every event is
+         * applied exactly once. Callbacks run on calling thread, so they must
+         * be thread-safe. It cannot be combined with {@link #async(Executor, Executor)}.
+         */
+        public Builder concurrent() {
+            mConcurrent = true;
+            return this;
+        }
 
-            public final State from;
-            public final State to;
+        /**
+         * Keep helper across configuration changes. Helper is stored in a headless retained
+         * fragment, keyed by request code; after rotation, {@link #build()} returns the same
+         * helper with callbacks of the new host. Retained fragment requests permissions, so
+         * results are delivered to helper automatically and are not lost when rotation
+         * happens during request.
+         *
+         * Activity must be a {@link FragmentActivity}, request code must fit lower 16 bits
+         * and default request action and guards must be used. Helper must be built in host
+         * {@code onCreate()} after {@code super.onCreate()} or later; building it earlier,
+         * e.g. in a field initializer, throws {@link IllegalStateException}.
+         */
+        public Builder retained() {
+            mRetained = true;
+            return this;
+        }
 
-            StatePair(State from, State to) {
-                this.from = from;
-                this.to = to;
+        public EzPermission build() {
+            if(mBatch != null && mScheduler != null) {
+                throw new IllegalArgumentException("Batch cannot be combined with scheduler");
             }
-
-            /// Autogenerated
-            @Override
-            public boolean equals(Object o) {
-                if (this == o) return true;
-                if (o == null || getClass() != o.getClass()) return false;
-
-                StatePair that = (StatePair) o;
-
-                if (from != that.from) return false;
-                return to == that.to;
+            boolean noContext = mActivity == null && mFragment == null;
+            if(noContext) {
+                if((mOnRequest == null && mBatch == null && mScheduler == null) || mIsPermissionGranted == null || mCanShowRationale == null) {
+                    throw new IllegalArgumentException("You must provide activity or fragment or onRequest, isPermissionGranted and canShowRationale.");
+                }
             }
 
-            /// Autogenerated
-            @Override
-            public int hashCode() {
-                int result = from != null ? from.hashCode() : 0;
-                result = 31 * result + (to != null ? to.hashCode() : 0);
-                return result;
+            final EzPermission helper;
+            if(mRetained) {
+                helper = buildRetained();
+                if(helper.mIsReattached) {
+                    resetFlowOptions(helper.mFlow);
+                }
+            } else {
+                helper = new EzPermission(mActivity,
+                                          mFragment,
+                                          mRequestCode,
+                                          mIsModal,
+                                          mPermissions,
+                                          mOnGranted,
+                                          mOnRationale,
+                                          mOnDenied,
+                                          mOnDeniedPermanently,
+                                          mOnCancelled,
+                                          mOnRequest,
+                                          mBatch,
+                                          mScheduler,
+                                          mPriority,
+                                          mCanShowRationale,
+                                          mMemoizeCanShowRationale,
+                                          mIsPermissionGranted,
+                                          mMemoizeIsPermissionGranted);
             }
+            if(mEvaluationExecutor != null || mDeliveryExecutor != null) {
+                helper.mFlow.setAsync(mEvaluationExecutor, mDeliveryExecutor);
+            }
+            if(mHistory != null) {
+                helper.mFlow.setHistory(mHistory);
+            }
+            if(mPartialGrantListener != null) {
+                helper.mFlow.setPartialGrantListener(mPartialGrantListener);
+            }
+            if(mConcurrent) {
+                helper.mFlow.setConcurrent(true);
+            }
+            attachListeners(helper);
+            if(helper.mRetainedCallbacks != null) {
+                helper.mRetainedCallbacks.replay();
+            }
+            return helper;
         }
 
-        private Callable<Boolean> mIsGranted;
-        private Callable<Boolean> mCanShowRationale;
-        private Callable<Boolean> mIsRationaleModal;
-        private Map<State, Runnable> mOnEntryCallbacks = new HashMap<>();
-        private Map<StatePair, Runnable> mOnTransitionCallbacks = new HashMap<>();
-
-        private Callable<Boolean> mNone = null;
-
-        private Runnable mOnGranted;
-        private Runnable mOnRationale;
-        private Runnable mOnRequest;
-        private Runnable mOnDenied;
-        private Runnable mOnDeniedPermanently;
-
-        private State mCurrentState = State.START;
-        private boolean mDebug = false;
-        private Row[] mFsmTable;
-
-        Fsm(Callable<Boolean> isGranted, Callable<Boolean> canShowRationale, Callable<Boolean> isRationaleModal, Runnable onGranted, Runnable onRationale, Runnable onRequest, Runnable onDenied, Runnable onDeniedPermanently) {
-            mIsGranted = isGranted;
-            mCanShowRationale = canShowRationale;
-            mIsRationaleModal = isRationaleModal;
-
-            mOnGranted = onGranted;
-            mOnRationale = onRationale;
-            mOnRequest = onRequest;
-            mOnDenied = onDenied;
-            mOnDeniedPermanently = onDeniedPermanently;
-
-            mFsmTable = new Row[] {
-                    new Row(State.START,      Event.DISPATCH, mIsGranted,                        State.GRANTED),
-                    new Row(State.START,      Event.DISPATCH, and(not(mIsGranted),
-                                                                      mCanShowRationale),        State.RATIONALE),
-                    new Row(State.START,      Event.DISPATCH, and(not(mIsGranted),
-                                                                  not(mCanShowRationale)),       State.REQUESTING),
-                    new Row(State.RATIONALE,  Event.DISPATCH, mNone,                             State.REQUESTING),
-                    new Row(State.RATIONALE,  Event.REJECT,   mIsRationaleModal,                 State.START),
-                    new Row(State.REQUESTING, Event.GRANTED,  mNone,                             State.GRANTED),
-                    new Row(State.REQUESTING, Event.DENIED,   and(mCanShowRationale,
-                                                                  mIsRationaleModal),            State.START),
-                    new Row(State.REQUESTING, Event.DENIED,   and(mCanShowRationale,
-                                                                  not(mIsRationaleModal)),       State.RATIONALE),
-                    new Row(State.REQUESTING, Event.DENIED,   not(mCanShowRationale),            State.DENIED),
-                    new Row(State.DENIED,     Event.DISPATCH, not(mIsGranted),                   State.DENIED),
-                    new Row(State.DENIED,     Event.DISPATCH, mIsGranted,                        State.GRANTED),
-                    new Row(State.GRANTED,    Event.DISPATCH, not(mIsGranted),                   State.DENIED),
-                    new Row(State.GRANTED,    Event.DISPATCH, mIsGranted,                        State.GRANTED)
-            };
-
-            mOnEntryCallbacks.put(State.GRANTED, mOnGranted);
-            mOnEntryCallbacks.put(State.RATIONALE, mOnRationale);
-            mOnEntryCallbacks.put(State.REQUESTING, mOnRequest);
-            mOnEntryCallbacks.put(State.DENIED, mOnDeniedPermanently);
-
-            mOnTransitionCallbacks.put(new StatePair(State.REQUESTING, State.START), mOnDenied);
-            mOnTransitionCallbacks.put(new StatePair(State.REQUESTING, State.RATIONALE), mOnDenied);
-        }
-
-        void start() {
-            try {
-                if (mIsRationaleModal.call()) {
-                    mCurrentState = State.START;
-                } else {
-                    mCurrentState = State.RATIONALE;
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
+        /**
+         * Reattached flow keeps options of previous host; options not set by
+         * this builder are reset, before options set by it are applied.
+         */
+        private void resetFlowOptions(PermissionFlow flow) {
+            if(!mConcurrent) {
+                flow.setConcurrent(false);
             }
+            if(mEvaluationExecutor == null && mDeliveryExecutor == null) {
+                flow.setAsync(null, null);
+            }
+            flow.setHistory(mHistory);
+            flow.setPartialGrantListener(mPartialGrantListener);
         }
 
-        State getCurrentState() {
-            return mCurrentState;
-        }
-
-        void setCurrentState(State state) {
-            mCurrentState = state;
-        }
-
-        void event(Event event) {
-            for(Row row : mFsmTable) {
-                if(row.evaluate(mCurrentState, event)) {
-                    if(mDebug) {
-                        String msg = String.format("event: %s, from: %s, to: %s", row.event, row.from, row.to);
-                        Log.d(TAG, msg);
-                    }
-                    StatePair currentTransition = new StatePair(mCurrentState, row.to);
-                    Runnable onTransition = mOnTransitionCallbacks.get(currentTransition);
-                    if(onTransition != null) {
-                        onTransition.run();
-                    }
-                    mCurrentState = row.to;
-                    Runnable onEntry = mOnEntryCallbacks.get(mCurrentState);
-                    if(onEntry != null) {
-                        onEntry.run();
-                    }
-                    break;
-                }
+        private void attachListeners(EzPermission helper) {
+            if(mRegistry != null) {
+                mRegistry.register(helper);
+            }
+            if(mWatcher != null) {
+                mWatcher.watch(helper);
             }
         }
 
-        void setDebug(boolean debug) {
-            mDebug = debug;
-        }
+        /**
+         * Reuse helper retained by host or build a new one and retain it. Retained helper
+         * is rebuilt if permissions or set of provided callbacks have changed.
+         */
+        private EzPermission buildRetained() {
+            if(mOnRequest != null || mBatch != null || mScheduler != null || mCanShowRationale != null || mIsPermissionGranted != null) {
+                throw new IllegalArgumentException("Retained helper must use default request action and guards");
+            }
+            if(mRequestCode < 0 || mRequestCode > EzPermissionRegistry.MAX_REQUEST_CODE) {
+                throw new IllegalArgumentException("Request code must fit lower 16 bits: " + mRequestCode);
+            }
+            final RetainedHelperFragment retainer;
+            if(mFragment != null) {
+                retainer = RetainedHelperFragment.of(mFragment);
+            } else if(mActivity instanceof FragmentActivity) {
+                retainer = RetainedHelperFragment.of((FragmentActivity) mActivity);
+            } else {
+                throw new IllegalArgumentException("Retained helper requires FragmentActivity or Fragment");
+            }
 
-        boolean getDebug() {
-            return mDebug;
-        }
+            final Runnable[] callbacks = new Runnable[] {mOnGranted, mOnRationale, mOnDenied, mOnDeniedPermanently, mOnCancelled};
+            final EzPermission retained = retainer.get(mRequestCode);
+            if(retained != null
+                    && Arrays.equals(retained.mFlow.getPermissionsArray(), mPermissions)
+                    && retained.mRetainedCallbacks.attach(callbacks)) {
+                retained.mIsReattached = true;
+                retained.mFlow.setIsModalRationale(mIsModal);
+                return retained;
+            }
 
-        private static Callable<Boolean> not(final Callable<Boolean> call) {
-            return new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    return !call.call();
-                }
-            };
+            final RetainedCallbacks retainedCallbacks = new RetainedCallbacks(callbacks);
+            final EzPermission helper = new EzPermission(null,
+                                                         retainer,
+                                                         mRequestCode,
+                                                         mIsModal,
+                                                         mPermissions,
+                                                         retainedCallbacks.get(RetainedCallbacks.ON_GRANTED),
+                                                         retainedCallbacks.get(RetainedCallbacks.ON_RATIONALE),
+                                                         retainedCallbacks.get(RetainedCallbacks.ON_DENIED),
+                                                         retainedCallbacks.get(RetainedCallbacks.ON_DENIED_PERMANENTLY),
+                                                         retainedCallbacks.get(RetainedCallbacks.ON_CANCELLED),
+                                                         null,
+                                                         null,
+                                                         null,
+                                                         0,
+                                                         null,
+                                                         true,
+                                                         null,
+                                                         true);
+            helper.mRetainedCallbacks = retainedCallbacks;
+            if(retained != null) {
+                helper.mFlow.setCurrentState(retained.getCurrentState());
+                retainedCallbacks.takePending(retained.mRetainedCallbacks);
+            }
+            retainer.put(helper);
+            return helper;
         }
 
-        @SafeVarargs
-        private static Callable<Boolean> and(final Callable<Boolean>... calls) {
-            return new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    for(Callable<Boolean> call : calls) {
-                        if(!call.call()) {
-                            return false;
-                        }
-                    }
-                    return true;
-                }
-            };
-        }
     }
 
-    private Fragment mFragment;
-    private Activity mActivity;
-    private int mRequestCode;
-    private List<String> mPermissions;
-    private List<String> mDeniedPermissions;
-    private boolean mIsRationaleModal = false;
+    /**
+     * Android implementation of platform calls. Permission checks go through
+     * {@link PermissionCache}.
+     */
+    static class AndroidPlatform implements PermissionPlatform {
 
-    private Runnable mOnGrantedAction;
-    private Runnable mOnRationaleAction;
-    private Runnable mOnDeniedAction;
-    private Runnable mOnDeniedPermanentlyAction;
+        private final Activity mActivity;
+        private final Fragment mFragment;
 
-    private Callable<Boolean> mIsPermissionGrantedGuard = new Callable<Boolean>() {
-        @Override
-        public Boolean call() throws Exception {
-            final Context context = getContext();
-            if(context != null) {
-                return hasPermissions(context, mPermissions);
+        AndroidPlatform(Activity activity, Fragment fragment) {
+            mActivity = activity;
+            mFragment = fragment;
+        }
+
+        Context getContext() {
+            if(mActivity != null) {
+                return mActivity;
+            } else if(mFragment != null) {
+                return mFragment.getContext();
             } else {
-                return false;
+                return null;
             }
         }
-    };
 
-    private Callable<Boolean> mCanShowRationaleGuard = new Callable<Boolean>() {
         @Override
-        public Boolean call() throws Exception {
-            if(mOnRationaleAction == null) {
-                return false;
-            }
-            return any(mPermissions, new Predicate<String>() {
-                @Override
-                public boolean test(String permission) {
-                    return ActivityCompat.shouldShowRequestPermissionRationale(mActivity, permission);
-                }
-            });
+        public boolean isGranted(String permission) {
+            final Context context = getContext();
+            return context != null && PermissionCache.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
         }
-    };
 
-    private Callable<Boolean> mIsRationaleModalGuard = new Callable<Boolean>() {
         @Override
-        public Boolean call() throws Exception {
-            return mIsRationaleModal;
+        public boolean shouldShowRationale(String permission) {
+            if(mActivity != null) {
+                return ActivityCompat.shouldShowRequestPermissionRationale(mActivity, permission);
+            } else if(mFragment != null) {
+                return mFragment.shouldShowRequestPermissionRationale(permission);
+            } else {
+                return false;
+            }
         }
-    };
 
-    private Runnable mOnRequestPermissionAction = new Runnable() {
         @Override
-        public void run() {
-            String[] permissionsArray = mPermissions.toArray(new String[mPermissions.size()]);
+        public void requestPermissions(String[] permissions, int requestCode) {
             if(mActivity != null) {
-                ActivityCompat.requestPermissions(mActivity, permissionsArray, mRequestCode);
+                ActivityCompat.requestPermissions(mActivity, permissions, requestCode);
             } else if(mFragment != null) {
-                mFragment.requestPermissions(permissionsArray, mRequestCode);
+                mFragment.requestPermissions(permissions, requestCode);
             }
         }
+    }
+
+    private static final Fsm.Logger LOGGER = new Fsm.Logger() {
+        @Override
+        public void log(String transition) {
+            Log.d(TAG, transition);
+        }
     };
 
-    private Fsm mFsm;
-    private String mExtraInstanceDebug;
-    private String mExtraInstanceFsmState;
+    private final AndroidPlatform mPlatform;
+    private final PermissionFlow mFlow;
+    private String mExtraInstanceState = null;
+
+    /**
+     * Retained mode: callbacks forwarded to current host and flag set when helper
+     * has been reused by new host, so its live state is not overwritten by saved state.
+     */
+    private RetainedCallbacks mRetainedCallbacks = null;
+    private boolean mIsReattached = false;
 
     public static Builder of(int requestCode, String[] permissions) {
         return new Builder((Activity)null, requestCode, permissions);
@@ -465,9 +532,15 @@ public class EzPermission {
      * @param onRationale Called when rationale should be shown
      * @param onDenied Called when permissions is denied; permissions can be requested again
      * @param onDeniedPermanantly Called when permissions is denied permanently
+     * @param onCancelled Called when permissions request has been interrupted
      * @param onRequest Called when permissions should be requested; when null, default behaviour will be used
+     * @param batch Batch used to request permissions when custom request action is not provided; can be null
+     * @param scheduler Scheduler used to request permissions when custom request action is not provided; can be null
+     * @param priority Priority of requests sent through scheduler
      * @param canShowRationale Should return true if rationale should be shown, false otherwise; when null, default guard will be used
+     * @param memoizeCanShowRationale True if custom rationale guard can be evaluated once per event
      * @param isPermissionGranted Should return true if permissions is granted, false otherwise; when null, default guard will be used
+     * @param memoizeIsPermissionGranted True if custom permission guard can be evaluated once per event
      */
     private EzPermission(Activity activity,
                         Fragment fragment,
@@ -478,95 +551,148 @@ public class EzPermission {
                         Runnable onRationale,
                         Runnable onDenied,
                         Runnable onDeniedPermanantly,
+                        Runnable onCancelled,
                         Runnable onRequest,
+                        final PermissionBatch batch,
+                        final PermissionScheduler scheduler,
+                        final int priority,
                         Callable<Boolean> canShowRationale,
-                        Callable<Boolean> isPermissionGranted) {
-
-        mExtraInstanceDebug = createExtraKey(EXTRA_INSTANCE_STATE_DEBUG, permissions);
-        mExtraInstanceFsmState = createExtraKey(EXTRA_INSTANCE_STATE_FSM_STATE, permissions);
-
-        if(onRequest != null) {
-            mOnRequestPermissionAction = onRequest;
-        }
-        if(canShowRationale != null) {
-            mCanShowRationaleGuard = canShowRationale;
-        }
-        if(isPermissionGranted != null) {
-            mIsPermissionGrantedGuard = isPermissionGranted;
-        }
+                        boolean memoizeCanShowRationale,
+                        Callable<Boolean> isPermissionGranted,
+                        boolean memoizeIsPermissionGranted) {
 
         if(activity != null && fragment != null) {
             throw new IllegalArgumentException("Only one fragment or activity is permitted");
         }
-        mActivity = activity;
-        mFragment = fragment;
-
-        mRequestCode = requestCode;
-        mPermissions = Arrays.asList(permissions);
-        mIsRationaleModal = isRationaleModal;
-
-        mOnGrantedAction = onGranted;
-        mOnRationaleAction = onRationale;
-        mOnDeniedAction = onDenied;
-        mOnDeniedPermanentlyAction = onDeniedPermanantly;
-
-        mFsm = new Fsm(
-                mIsPermissionGrantedGuard,
-                mCanShowRationaleGuard,
-                mIsRationaleModalGuard,
-                mOnGrantedAction,
-                mOnRationaleAction,
-                mOnRequestPermissionAction,
-                mOnDeniedAction,
-                mOnDeniedPermanentlyAction
-        );
+        mPlatform = new AndroidPlatform(activity, fragment);
+        if(onRequest == null && batch != null) {
+            onRequest = new Runnable() {
+                @Override
+                public void run() {
+                    batch.enqueue(EzPermission.this);
+                }
+            };
+        } else if(onRequest == null && scheduler != null) {
+            onRequest = new Runnable() {
+                @Override
+                public void run() {
+                    scheduler.enqueue(EzPermission.this, priority);
+                }
+            };
+        }
+        mFlow = new PermissionFlow(mPlatform,
+                                   requestCode,
+                                   permissions,
+                                   isRationaleModal,
+                                   onGranted,
+                                   onRationale,
+                                   onDenied,
+                                   onDeniedPermanantly,
+                                   onCancelled,
+                                   onRequest,
+                                   canShowRationale,
+                                   memoizeCanShowRationale,
+                                   isPermissionGranted,
+                                   memoizeIsPermissionGranted);
+        mFlow.setLogger(LOGGER);
+    }
 
-        mFsm.start();
+    /**
+     * Drop callbacks of retained helper when its host is destroyed.
+     */
+    void detachRetained() {
+        if(mRetainedCallbacks != null) {
+            mRetainedCallbacks.detach();
+        }
     }
 
     /**
-     * Save instance state to a provided bundle. It will use extras key with
-     * full class name, so there should be no key name conflict.
+     * Save instance state to a provided bundle. State is stored as a single int,
+     * under a short key derived from request code and permissions, so helpers
+     * with different request codes or permissions do not conflict.
      *
      * @param outState Bundle to save state to.
      */
     public void saveInstanceState(Bundle outState) {
         if(outState != null) {
-            outState.putBoolean(mExtraInstanceDebug, mFsm.getDebug());
-            outState.putSerializable(mExtraInstanceFsmState, mFsm.getCurrentState());
+            outState.putInt(getExtraInstanceState(), encodeInstanceState(mFlow.getCurrentState(), mFlow.getDebug()));
         }
     }
 
     /**
      * Restore instance state from provided bundle. If no state has been saved,
-     * this call has no effect.
+     * this call has no effect. State saved by previous versions is restored too.
+     * State saved in unknown format, ex. by newer version after downgrade, is
+     * ignored and helper starts from start state.
      * @param inState Input bundle with saved instance state.
      */
     public void restoreInstanceState(Bundle inState) {
-        if(inState != null) {
-            if (inState.containsKey(mExtraInstanceDebug)) {
-                boolean debug = inState.getBoolean(mExtraInstanceDebug, false);
-                mFsm.setDebug(debug);
+        if(inState != null && !mIsReattached) {
+            final String key = getExtraInstanceState();
+            if(inState.containsKey(key)) {
+                final int instanceState = inState.getInt(key, 0);
+                final Fsm.State state = decodeFsmState(instanceState);
+                if(state == null) {
+                    Log.w(TAG, "Ignoring unsupported instance state: " + Integer.toHexString(instanceState));
+                    mFlow.setCurrentState(Fsm.State.START);
+                    return;
+                }
+                mFlow.setCurrentState(state);
+                mFlow.setDebug((instanceState & INSTANCE_STATE_DEBUG) != 0);
+            } else {
+                restoreLegacyInstanceState(inState);
             }
+        }
+    }
 
-            if (inState.containsKey(mExtraInstanceFsmState)) {
-                Fsm.State state = (Fsm.State) inState.getSerializable(mExtraInstanceFsmState);
-                if (state == null) {
-                    throw new IllegalStateException("Saved state machine instance state is null");
-                }
-                mFsm.setCurrentState(state);
+    /**
+     * Restore instance state saved with Serializable state under long keys.
+     */
+    private void restoreLegacyInstanceState(Bundle inState) {
+        final String[] permissions = mFlow.getPermissionsArray();
+        final String debugKey = createExtraKey(EXTRA_INSTANCE_STATE_DEBUG, permissions);
+        final String fsmStateKey = createExtraKey(EXTRA_INSTANCE_STATE_FSM_STATE, permissions);
+        if (inState.containsKey(debugKey)) {
+            boolean debug = inState.getBoolean(debugKey, false);
+            mFlow.setDebug(debug);
+        }
+
+        if (inState.containsKey(fsmStateKey)) {
+            Fsm.State state = (Fsm.State) inState.getSerializable(fsmStateKey);
+            if (state == null) {
+                throw new IllegalStateException("Saved state machine instance state is null");
             }
+            mFlow.setCurrentState(state);
+        }
+    }
+
+    static int encodeInstanceState(Fsm.State state, boolean debug) {
+        return INSTANCE_STATE_VERSION << INSTANCE_STATE_VERSION_SHIFT
+                | (debug ? INSTANCE_STATE_DEBUG : 0)
+                | state.ordinal();
+    }
+
+    /**
+     * @return Saved state or null if state was saved in unknown format, ex. by newer version
+     */
+    static Fsm.State decodeFsmState(int instanceState) {
+        final int version = instanceState >>> INSTANCE_STATE_VERSION_SHIFT;
+        final int ordinal = instanceState & INSTANCE_STATE_FSM_STATE_MASK;
+        if(version != INSTANCE_STATE_VERSION || ordinal >= FSM_STATES.length) {
+            return null;
         }
+        return FSM_STATES[ordinal];
     }
 
     /**
-     * Set debug flag. In debug mode, state machine transitions are printed using {@link Log}.
+     * Set debug flag. In debug mode, state machine transitions are recorded in {@link TransitionTrace},
+     * even if it is disabled, and printed using {@link Log}.
      * By default debug is set to false.
      *
      * @param debug true to enable state machine debug log, false to disable
      */
     public void setDebug(boolean debug) {
-        mFsm.setDebug(debug);
+        mFlow.setDebug(debug);
     }
 
     /**
@@ -575,15 +701,18 @@ public class EzPermission {
      * @return Debug flag
      */
     public boolean getDebug() {
-        return mFsm.getDebug();
+        return mFlow.getDebug();
     }
 
     /**
      * Call code that requires permission. If permission is not granted,
      * the state machine will handle the flow to request the permission.
+     *
+     * In asynchronous mode, permissions are checked in background and callbacks
+     * are posted to main thread.
      */
     public void call() {
-        mFsm.event(Fsm.Event.DISPATCH);
+        mFlow.call();
     }
 
     /**
@@ -591,7 +720,7 @@ public class EzPermission {
      * when user accepts rationale (ex. when user taps Ok in rationale dialog).
      */
     public void acceptRationale() {
-        call();
+        mFlow.acceptRationale();
     }
 
     /**
@@ -599,31 +728,61 @@ public class EzPermission {
      * when user rejects rationale (ex. when user taps Cancel in rationale dialog).
      */
     public void rejectRationale() {
-        mFsm.event(Fsm.Event.REJECT);
+        mFlow.rejectRationale();
     }
 
     /**
      * This methods should be called in {@link Activity#onRequestPermissionsResult(int, String[], int[])}.
+     *
+     * Empty results, delivered when permissions request is interrupted, are treated as
+     * cancellation, not denial.
      */
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
-        if(requestCode != mRequestCode) {
-            return;
+        if(requestCode == mFlow.getRequestCode()
+                && permissions != null
+                && grantResults != null
+                && permissions.length == grantResults.length) {
+            PermissionCache.update(permissions, grantResults);
         }
+        mFlow.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
 
-        boolean allGranted = true;
-        mDeniedPermissions = new ArrayList<>(mPermissions.size());
-        for(String permission : mPermissions) {
-            if(!isGranted(permissions, grantResults, permission)) {
-                allGranted = false;
-                mDeniedPermissions.add(permission);
-            }
-        }
-        
-        if(allGranted) {
-            mFsm.event(Fsm.Event.GRANTED);
-        } else {
-            mFsm.event(Fsm.Event.DENIED);
-        }
+    /**
+     * Deliver results split by {@link PermissionBatch} or {@link PermissionScheduler}.
+     * Cache is already updated by caller.
+     */
+    void deliverRequestPermissionsResult(String[] permissions, int[] grantResults) {
+        mFlow.onRequestPermissionsResult(mFlow.getRequestCode(), permissions, grantResults);
+    }
+
+    /**
+     * @return true if {@link PermissionWatcher} should check permissions of this helper
+     */
+    boolean needsGrantCheck() {
+        return mFlow.needsGrantCheck();
+    }
+
+    /**
+     * Revalidate granted or denied state with grant state checked by {@link PermissionWatcher}.
+     *
+     * @return true if state has been revalidated
+     */
+    boolean revalidate(PermissionSet granted) {
+        return mFlow.revalidate(granted);
+    }
+
+    /**
+     * @return Request code used by this helper
+     */
+    public int getRequestCode() {
+        return mFlow.getRequestCode();
+    }
+
+    /**
+     * @return Permissions handled by this helper
+     */
+    public PermissionSet getPermissions() {
+        return mFlow.getPermissions();
     }
 
     /**
@@ -633,7 +792,69 @@ public class EzPermission {
      * @return Unmodifiable list of denied permissions.
      */
     public List<String> getDeniedPermissions() {
-        return  Collections.unmodifiableList(mDeniedPermissions);
+        return mFlow.getDeniedPermissions();
+    }
+
+    /**
+     * Get set of denied permissions. Result is valid only after {@link #onRequestPermissionsResult(int, String[], int[])}
+     * is called. Returned set is reused until request result changes.
+     *
+     * @return Set of denied permissions.
+     */
+    public PermissionSet getDeniedPermissionSet() {
+        return mFlow.getDeniedPermissionSet();
+    }
+
+    /**
+     * Check if permission has been denied. Result is valid only after {@link #onRequestPermissionsResult(int, String[], int[])}
+     * is called. This call does not allocate.
+     *
+     * @param permission Permission to check
+     * @return true if permission has been denied
+     */
+    public boolean isPermissionDenied(String permission) {
+        return mFlow.isPermissionDenied(permission);
+    }
+
+    /**
+     * Get last known grant state of every permission. It is tracked only if helper
+     * is built with {@link Builder#partialGrant(PartialGrantListener)}.
+     *
+     * @return Grant state snapshot or null, if it is not known
+     */
+    public PermissionSnapshot getSnapshot() {
+        return mFlow.getSnapshot();
+    }
+
+    /**
+     * Get token proving that permissions are granted. Token is issued before
+     * {@code onGranted} is called and becomes invalid when helper detects that
+     * permissions are no longer granted. {@link PermissionToken#isValid()} is a
+     * single volatile read, so it can be checked on every frame, on any thread.
+     *
+     * @return Current token; it is invalid if permissions are not granted
+     */
+    public PermissionToken getToken() {
+        return mFlow.getToken();
+    }
+
+    /**
+     * Add listener notified about every outcome of this helper, after the callback
+     * of the outcome. It allows to await the outcome, ex. from a coroutine.
+     *
+     * @param listener Outcome listener
+     */
+    public void addOutcomeListener(PermissionOutcomeListener listener) {
+        mFlow.addOutcomeListener(listener);
+    }
+
+    /**
+     * Remove outcome listener.
+     *
+     * @param listener Outcome listener
+     */
+    public void removeOutcomeListener(PermissionOutcomeListener listener) {
+        mFlow.removeOutcomeListener(listener);
     }
 
     /**
@@ -643,7 +864,7 @@ public class EzPermission {
      * @param isModal True if rationale is modal (dialog), false if modeless ("full-screen")
      */
     public void setIsModalRationale(boolean isModal) {
-        mIsRationaleModal = isModal;
+        mFlow.setIsModalRationale(isModal);
     }
 
     /**
@@ -652,7 +873,16 @@ public class EzPermission {
      * @return Current staet machine state
      */
     Fsm.State getCurrentState() {
-        return mFsm.getCurrentState();
+        return mFlow.getCurrentState();
+    }
+
+    /**
+     * Force state machine state. This method is used only for tests and benchmarks.
+     *
+     * @param state New state machine state
+     */
+    void setCurrentState(Fsm.State state) {
+        mFlow.setCurrentState(state);
     }
 
     /**
@@ -662,21 +892,31 @@ public class EzPermission {
      * @return Context or null, if context is not available
      */
     public Context getContext() {
-        if(mActivity != null) {
-            return mActivity;
-        } else if(mFragment != null) {
-            return mFragment.getContext();
-        } else {
-            return null;
-        }
+        return mPlatform.getContext();
     }
 
-    private static String createExtraKey(String keyPrefix, String[] permissions) {
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Bundle key is needed only when instance state is saved or restored,
+     * so it is created on first use. Permissions are keyed by hash, which can
+     * collide; helpers saving state to the same bundle must use distinct request
+     * codes, as they do to tell their results apart.
+     */
+    private String getExtraInstanceState() {
+        if(mExtraInstanceState == null) {
+            mExtraInstanceState = EXTRA_INSTANCE_STATE_PREFIX
+                    + Integer.toHexString(mFlow.getRequestCode())
+                    + ':'
+                    + Integer.toHexString(Arrays.hashCode(mFlow.getPermissionsArray()));
+        }
+        return mExtraInstanceState;
+    }
+
+    static String createExtraKey(String keyPrefix, String[] permissions) {
+        StringBuilder builder = new StringBuilder(keyPrefix).append(':');
         for(String permission : permissions) {
             builder.append(permission).append(';');
         }
-        return String.format("%s:%s", keyPrefix, builder);
+        return builder.toString();
     }
 
     /**
@@ -697,60 +937,53 @@ public class EzPermission {
     }
 
     /**
-     * Checks if all permissions are granted.
+     * Checks if all permissions are granted. If {@link PermissionCache} is enabled,
+     * cached grant state is used.
      *
      * @param context Context used to access permissions API
      * @param permissions Collection of required permissions
      * @return true if all permissions are granted, false if any permission is denied
      */
-    public static boolean hasPermissions(final Context context, final Collection<String> permissions) {
-        return all(permissions, new Predicate<String>() {
-            @Override
-            public boolean test(String permission) {
-                int result = ContextCompat.checkSelfPermission(context, permission);
-                return result == PackageManager.PERMISSION_GRANTED;
+    public static boolean hasPermissions(Context context, Collection<String> permissions) {
+        for(String permission : permissions) {
+            if(PermissionCache.checkSelfPermission(context, permission) != PackageManager.PERMISSION_GRANTED) {
+                return false;
             }
-        });
+        }
+        return true;
     }
 
     /**
-     * This method is used to evaluate permissions result. It scans permissions result to see if
-     * requested permission has been granted.
+     * Checks if all permissions are granted. If {@link PermissionCache} is enabled,
+     * cached grant state is used.
      *
-     * @param permissions List of requested permissions
-     * @param grantResults Grant results that match requested permissions
-     * @param requiredPermission Permission to check
-     * @return true if permission is granted, false if not or permission was not requested
+     * @param context Context used to access permissions API
+     * @param permissions Set of required permissions
+     * @return true if all permissions are granted, false if any permission is denied
      */
-    private static boolean isGranted(String[] permissions, int[] grantResults, String requiredPermission) {
-        if(requiredPermission == null || permissions == null || grantResults == null) {
-            throw new IllegalArgumentException("Permission, requested permissions and grant result cannot be null");
-        }
-
-        if(permissions.length != grantResults.length) {
-            throw new IllegalArgumentException("Permissions and grant result size differ");
-        }
-
-        for(int i = 0; i < permissions.length; i++) {
-            boolean isRequired = requiredPermission.equals(permissions[i]);
-            boolean isGranted = grantResults[i] == PackageManager.PERMISSION_GRANTED;
-            if(isRequired && isGranted) return true;
-        }
-
-        return false;
-    }
-
-    private static <T> Boolean all(Collection<T> collection, Predicate<T> predicate) {
-        for(T item : collection) {
-            if(!predicate.test(item)) return false;
+    public static boolean hasPermissions(Context context, PermissionSet permissions) {
+        for(int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if(PermissionCache.checkSelfPermission(context, PermissionSet.nameOf(id)) != PackageManager.PERMISSION_GRANTED) {
+                return false;
+            }
         }
         return true;
     }
 
-    private static <T> Boolean any(Collection<T> collection, Predicate<T> predicate) {
-        for(T item : collection) {
-            if(predicate.test(item)) return true;
-        }
-        return false;
+    /**
+     * Check grant state of all permissions in one pass. If {@link PermissionCache} is enabled,
+     * cached grant state is used.
+     *
+     * @param context Context used to access permissions API
+     * @param permissions Set of permissions to check
+     * @return Snapshot of permissions grant state
+     */
+    public static PermissionSnapshot checkPermissions(final Context context, PermissionSet permissions) {
+        return PermissionSnapshot.check(permissions, new PermissionChecker() {
+            @Override
+            public boolean isGranted(String permission) {
+                return PermissionCache.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+            }
+        });
     }
 }
@@ -0,0 +1,139 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+import android.util.SparseArray;
+
+/**
+ * Routes permission request results to helpers owned by a single host
+ * activity or fragment.
+ *
+ * Helpers built with {@link #of(Activity, String[])} or {@link #of(Fragment, String[])}
+ * get collision-free request codes and are registered automatically. Host forwards
+ * results with a single call to {@link #onRequestPermissionsResult(int, String[], int[])}
+ * and registry delivers them to the helper that owns the request code.
+ */
+public class EzPermissionRegistry {
+
+    /**
+     * Support library fragments and activities accept only lower 16 bits of request code.
+     */
+    static final int MAX_REQUEST_CODE = 0xffff;
+
+    /**
+     * Automatically assigned request codes start from this value, so they
+     * are unlikely to collide with small, manually chosen codes. Codes below,
+     * from {@code 0x5000} to {@code 0x5fff}, are used by generated helpers.
+     */
+    static final int FIRST_AUTO_REQUEST_CODE = 0x6000;
+
+    private final SparseArray<EzPermission> mHelpers = new SparseArray<>();
+    private int mNextRequestCode = FIRST_AUTO_REQUEST_CODE;
+
+    /**
+     * Create helper builder with automatically assigned request code. Built helper
+     * is registered in this registry.
+     *
+     * @param activity Activity used to request permissions
+     * @param permissions Permissions to ask for
+     * @return Helper builder
+     */
+    public EzPermission.Builder of(Activity activity, String[] permissions) {
+        return EzPermission.of(activity, nextRequestCode(), permissions).registry(this);
+    }
+
+    /**
+     * Create helper builder with automatically assigned request code. Built helper
+     * is registered in this registry.
+     *
+     * @param fragment Fragment used to request permissions
+     * @param permissions Permissions to ask for
+     * @return Helper builder
+     */
+    public EzPermission.Builder of(Fragment fragment, String[] permissions) {
+        return EzPermission.of(fragment, nextRequestCode(), permissions).registry(this);
+    }
+
+    /**
+     * Find request code that is not used by any registered helper. Code is
+     * not reserved until helper is registered.
+     *
+     * @return Free request code
+     * @throws IllegalStateException if all request codes are used
+     */
+    public int nextRequestCode() {
+        for(int i = 0; i <= MAX_REQUEST_CODE; i++) {
+            int requestCode = mNextRequestCode;
+            mNextRequestCode = requestCode == MAX_REQUEST_CODE ? FIRST_AUTO_REQUEST_CODE : requestCode + 1;
+            if(mHelpers.get(requestCode) == null) {
+                return requestCode;
+            }
+        }
+        throw new IllegalStateException("No free request codes");
+    }
+
+    /**
+     * Register helper. Results with helper request code will be delivered to it.
+     *
+     * @param helper Helper to register
+     * @throws IllegalArgumentException if request code does not fit 16 bits or it is used by other helper
+     */
+    public void register(EzPermission helper) {
+        final int requestCode = helper.getRequestCode();
+        if(requestCode < 0 || requestCode > MAX_REQUEST_CODE) {
+            throw new IllegalArgumentException("Request code must fit lower 16 bits: " + requestCode);
+        }
+        final EzPermission registered = mHelpers.get(requestCode);
+        if(registered != null && registered != helper) {
+            throw new IllegalArgumentException("Request code is already used: " + requestCode);
+        }
+        mHelpers.put(requestCode, helper);
+    }
+
+    /**
+     * Unregister helper. If helper is not registered, this call has no effect.
+     *
+     * @param helper Helper to unregister
+     */
+    public void unregister(EzPermission helper) {
+        final int requestCode = helper.getRequestCode();
+        if(mHelpers.get(requestCode) == helper) {
+            mHelpers.remove(requestCode);
+        }
+    }
+
+    /**
+     * This methods should be called in {@link Activity#onRequestPermissionsResult(int, String[], int[])}.
+     *
+     * @return true if result has been delivered to registered helper, false otherwise
+     */
+    public boolean onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        final EzPermission helper = mHelpers.get(requestCode);
+        if(helper == null) {
+            return false;
+        }
+        helper.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        return true;
+    }
+
+    /**
+     * @return Number of registered helpers
+     */
+    public int size() {
+        return mHelpers.size();
+    }
+}
@@ -0,0 +1,134 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.pm.PackageManager;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single system request made on behalf of several helpers. It is shared
+ * by {@link PermissionBatch} and {@link PermissionScheduler}.
+ */
+final class GroupRequest {
+
+    /**
+     * Action posted to main thread handler at most once until it runs or is cancelled.
+     */
+    static final class Post implements Runnable {
+
+        private final Handler mHandler;
+        private final Runnable mAction;
+        private boolean mIsScheduled = false;
+
+        Post(Handler handler, Runnable action) {
+            mHandler = handler;
+            mAction = action;
+        }
+
+        void schedule() {
+            if(!mIsScheduled) {
+                mIsScheduled = true;
+                mHandler.post(this);
+            }
+        }
+
+        void cancel() {
+            if(mIsScheduled) {
+                mIsScheduled = false;
+                mHandler.removeCallbacks(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            mIsScheduled = false;
+            mAction.run();
+        }
+    }
+
+    private GroupRequest() {
+    }
+
+    /**
+     * @return Union of permissions of all helpers
+     */
+    static PermissionSet union(List<EzPermission> helpers) {
+        PermissionSet permissions = PermissionSet.EMPTY;
+        for(EzPermission helper : helpers) {
+            permissions = permissions.union(helper.getPermissions());
+        }
+        return permissions;
+    }
+
+    /**
+     * Validate system result as received in {@code onRequestPermissionsResult()}.
+     */
+    static void checkResult(String[] permissions, int[] grantResults) {
+        if(permissions == null || grantResults == null) {
+            throw new IllegalArgumentException("Requested permissions and grant result cannot be null");
+        }
+
+        if(permissions.length != grantResults.length) {
+            throw new IllegalArgumentException("Permissions and grant result size differ");
+        }
+    }
+
+    /**
+     * Split system result between helpers. Every helper receives results of its own
+     * permissions: permissions granted in result or skipped are reported as granted,
+     * remaining ones as denied. Empty result, delivered when request is interrupted,
+     * is delivered as empty to every helper.
+     *
+     * @param helpers Helpers waiting for result
+     * @param permissions Permissions from system result
+     * @param grantResults Grant results from system result
+     * @param skipped Permissions not requested, because they had been granted
+     */
+    static void deliver(List<EzPermission> helpers, String[] permissions, int[] grantResults, PermissionSet skipped) {
+        if(permissions.length == 0) {
+            cancel(helpers);
+            return;
+        }
+
+        final ArrayList<String> grantedPermissions = new ArrayList<>(permissions.length);
+        for(int i = 0; i < permissions.length; i++) {
+            if(grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+                grantedPermissions.add(permissions[i]);
+            }
+        }
+        final PermissionSet granted = PermissionSet.of(grantedPermissions).union(skipped);
+
+        for(EzPermission helper : helpers) {
+            final String[] helperPermissions = helper.getPermissions().toArray();
+            final int[] helperResults = new int[helperPermissions.length];
+            for(int i = 0; i < helperPermissions.length; i++) {
+                helperResults[i] = granted.contains(helperPermissions[i]) ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+            }
+            helper.deliverRequestPermissionsResult(helperPermissions, helperResults);
+        }
+    }
+
+    /**
+     * Deliver empty result to every helper, as for interrupted request.
+     */
+    static void cancel(List<EzPermission> helpers) {
+        for(EzPermission helper : helpers) {
+            helper.deliverRequestPermissionsResult(new String[0], new int[0]);
+        }
+    }
+}
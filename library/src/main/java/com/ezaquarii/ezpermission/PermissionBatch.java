@@ -0,0 +1,151 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+
+import java.util.ArrayList;
+
+/**
+ * Merges permission requests of several helpers into a single system request.
+ *
+ * Helpers built with {@link EzPermission.Builder#batch(PermissionBatch)} do not
+ * request permissions on their own. All helpers that enter requesting state
+ * within one main thread dispatch window are requested together, with
+ * union of their permissions. Single result is then split and delivered to
+ * every requesting helper.
+ *
+ * Requests made while batch request is in flight are deferred until results
+ * are delivered, so system never cancels overlapping requests.
+ *
+ * Results must be delivered to {@link #onRequestPermissionsResult(int, String[], int[])}
+ * using batch request code. If results can be lost, for example when host
+ * is destroyed while request is in flight, call {@link #reset()} so deferred
+ * requests are not blocked.
+ */
+public class PermissionBatch {
+
+    private final PermissionPlatform mPlatform;
+    private final int mRequestCode;
+    private final GroupRequest.Post mFlushPost;
+    private ArrayList<EzPermission> mPending = new ArrayList<>();
+    private ArrayList<EzPermission> mInFlight = new ArrayList<>();
+
+    /**
+     * @param activity Activity used to request permissions
+     * @param requestCode Request code of batch request; it must be different from helpers request codes
+     */
+    public PermissionBatch(Activity activity, int requestCode) {
+        this(new EzPermission.AndroidPlatform(activity, null), requestCode, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param fragment Fragment used to request permissions
+     * @param requestCode Request code of batch request; it must be different from helpers request codes
+     */
+    public PermissionBatch(Fragment fragment, int requestCode) {
+        this(new EzPermission.AndroidPlatform(null, fragment), requestCode, new Handler(Looper.getMainLooper()));
+    }
+
+    PermissionBatch(PermissionPlatform platform, int requestCode, Handler handler) {
+        mPlatform = platform;
+        mRequestCode = requestCode;
+        mFlushPost = new GroupRequest.Post(handler, new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Add helper to the next batch request. It is called by helper state machine
+     * on entry to requesting state.
+     *
+     * @param helper Helper requesting permissions
+     */
+    void enqueue(EzPermission helper) {
+        if(mPending.contains(helper) || mInFlight.contains(helper)) {
+            return;
+        }
+        mPending.add(helper);
+        if(mInFlight.isEmpty()) {
+            mFlushPost.schedule();
+        }
+    }
+
+    /**
+     * Request permissions of all pending helpers immediately, without waiting
+     * for the end of dispatch window. If batch request is in flight, this call
+     * has no effect.
+     */
+    public void flush() {
+        if(mPending.isEmpty() || !mInFlight.isEmpty()) {
+            return;
+        }
+        ArrayList<EzPermission> requesting = mPending;
+        mPending = mInFlight;
+        mInFlight = requesting;
+        mPlatform.requestPermissions(GroupRequest.union(mInFlight).toArray(), mRequestCode);
+    }
+
+    /**
+     * This methods should be called in {@link Activity#onRequestPermissionsResult(int, String[], int[])}.
+     * Results with different request code are ignored.
+     *
+     * Every requesting helper receives results of its own permissions. Empty results,
+     * delivered when request is interrupted, are delivered as empty to every helper.
+     */
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if(requestCode != mRequestCode) {
+            return;
+        }
+
+        GroupRequest.checkResult(permissions, grantResults);
+        PermissionCache.update(permissions, grantResults);
+
+        final ArrayList<EzPermission> requested = mInFlight;
+        mInFlight = new ArrayList<>();
+        GroupRequest.deliver(requested, permissions, grantResults, PermissionSet.EMPTY);
+
+        if(!mPending.isEmpty()) {
+            mFlushPost.schedule();
+        }
+    }
+
+    /**
+     * Abandon batch request in flight, whose results will not be delivered.
+     * Its helpers receive empty results, as for interrupted request, and
+     * deferred requests are sent at the end of current dispatch window.
+     * If no request is deferred, scheduled flush is cancelled.
+     */
+    public void reset() {
+        final ArrayList<EzPermission> requested = mInFlight;
+        mInFlight = new ArrayList<>();
+        GroupRequest.cancel(requested);
+        if(mPending.isEmpty()) {
+            mFlushPost.cancel();
+        } else {
+            mFlushPost.schedule();
+        }
+    }
+
+    public int getRequestCode() {
+        return mRequestCode;
+    }
+}
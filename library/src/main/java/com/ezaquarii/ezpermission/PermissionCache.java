@@ -0,0 +1,222 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of permission grant state. It is disabled by default.
+ *
+ * When enabled, permission checks done by {@link EzPermission} are served from
+ * memory. Cache is updated with grant results delivered to
+ * {@link EzPermission#onRequestPermissionsResult(int, String[], int[])} and
+ * it is invalidated every time any activity is resumed, as user can change
+ * permissions in system settings while application is in background.
+ */
+public final class PermissionCache {
+
+    private static final String TAG = PermissionCache.class.getSimpleName();
+
+    private static volatile boolean sEnabled = false;
+    private static Application sApplication = null;
+
+    private static final ConcurrentHashMap<String, Boolean> sGrantState = new ConcurrentHashMap<>();
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+    private static final AtomicLong sHits = new AtomicLong();
+    private static final AtomicLong sMisses = new AtomicLong();
+
+    private static final Application.ActivityLifecycleCallbacks sLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+        @Override public void onActivityStarted(Activity activity) {}
+        @Override public void onActivityResumed(Activity activity) {
+            invalidate();
+        }
+        @Override public void onActivityPaused(Activity activity) {}
+        @Override public void onActivityStopped(Activity activity) {}
+        @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+        @Override public void onActivityDestroyed(Activity activity) {}
+    };
+
+    private PermissionCache() {}
+
+    /**
+     * Enable cache. Cache registers activity lifecycle callbacks to invalidate
+     * itself on every activity resume.
+     *
+     * @param application Application used to observe activities
+     */
+    public static synchronized void enable(Application application) {
+        if(sEnabled) {
+            return;
+        }
+        sApplication = application;
+        sApplication.registerActivityLifecycleCallbacks(sLifecycleCallbacks);
+        invalidate();
+        sEnabled = true;
+    }
+
+    /**
+     * Disable cache and drop all cached values. Permission checks are
+     * passed directly to the system.
+     */
+    public static synchronized void disable() {
+        if(!sEnabled) {
+            return;
+        }
+        sEnabled = false;
+        sApplication.unregisterActivityLifecycleCallbacks(sLifecycleCallbacks);
+        sApplication = null;
+        invalidate();
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Drop all cached values. Next check of every permission will query the system.
+     */
+    public static void invalidate() {
+        sGeneration.incrementAndGet();
+        sGrantState.clear();
+    }
+
+    /**
+     * Check all permissions declared in application manifest on provided executor,
+     * so first permission check done on main thread is served from memory.
+     * This call has no effect if cache is disabled.
+     *
+     * @param context Context used to access package manager
+     * @param executor Background executor
+     */
+    public static void prewarm(Context context, Executor executor) {
+        if(!sEnabled) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int generation = sGeneration.get();
+                final String[] permissions;
+                try {
+                    PackageInfo info = appContext.getPackageManager().getPackageInfo(appContext.getPackageName(), PackageManager.GET_PERMISSIONS);
+                    permissions = info.requestedPermissions;
+                } catch (PackageManager.NameNotFoundException ex) {
+                    Log.w(TAG, "Cannot read declared permissions", ex);
+                    return;
+                }
+                if(permissions == null) {
+                    return;
+                }
+                for(String permission : permissions) {
+                    int result = ContextCompat.checkSelfPermission(appContext, permission);
+                    store(permission, result == PackageManager.PERMISSION_GRANTED, generation);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get number of permission checks served from cache.
+     *
+     * @return Cache hits count
+     */
+    public static long getHitCount() {
+        return sHits.get();
+    }
+
+    /**
+     * Get number of permission checks passed to the system while cache was enabled.
+     *
+     * @return Cache misses count
+     */
+    public static long getMissCount() {
+        return sMisses.get();
+    }
+
+    /**
+     * Reset hits and misses counters.
+     */
+    public static void resetStats() {
+        sHits.set(0);
+        sMisses.set(0);
+    }
+
+    /**
+     * Check permission using cache, if enabled.
+     *
+     * @param context Context used to access permissions API
+     * @param permission Permission to check
+     * @return {@link PackageManager#PERMISSION_GRANTED} or {@link PackageManager#PERMISSION_DENIED}
+     */
+    static int checkSelfPermission(Context context, String permission) {
+        if(!sEnabled) {
+            return ContextCompat.checkSelfPermission(context, permission);
+        }
+
+        Boolean granted = sGrantState.get(permission);
+        if(granted != null) {
+            sHits.incrementAndGet();
+            return granted ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+
+        sMisses.incrementAndGet();
+        final int generation = sGeneration.get();
+        int result = ContextCompat.checkSelfPermission(context, permission);
+        store(permission, result == PackageManager.PERMISSION_GRANTED, generation);
+        return result;
+    }
+
+    /**
+     * Update cache with permission request results.
+     *
+     * @param permissions Requested permissions
+     * @param grantResults Grant results that match requested permissions
+     */
+    static void update(String[] permissions, int[] grantResults) {
+        if(!sEnabled || permissions == null || grantResults == null) {
+            return;
+        }
+        final int generation = sGeneration.get();
+        final int count = Math.min(permissions.length, grantResults.length);
+        for(int i = 0; i < count; i++) {
+            store(permissions[i], grantResults[i] == PackageManager.PERMISSION_GRANTED, generation);
+        }
+    }
+
+    /**
+     * Store permission state, unless cache has been invalidated after
+     * the state was obtained.
+     */
+    private static void store(String permission, boolean granted, int generation) {
+        sGrantState.put(permission, granted);
+        if(sGeneration.get() != generation) {
+            sGrantState.remove(permission);
+        }
+    }
+}
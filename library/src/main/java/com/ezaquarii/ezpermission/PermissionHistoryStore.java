@@ -0,0 +1,167 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.AsyncTask;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Permission request history kept in shared preferences.
+ *
+ * Every permission takes a single int entry. History is loaded on provided
+ * executor when it is used for the first time and then served from memory.
+ * Until it is loaded, permissions not recorded in this process are reported
+ * as not denied, so they are requested as without history; the caller never
+ * waits for preferences. Writes are done on the same executor, so they never
+ * block the thread delivering results.
+ */
+public class PermissionHistoryStore implements PermissionHistory {
+
+    static final String PREFERENCES_NAME = "ezpermission_history";
+
+    static final int FLAG_REQUESTED = 1;
+    static final int FLAG_DENIED = 1 << 1;
+    static final int FLAG_DENIED_PERMANENTLY = 1 << 2;
+
+    private static final int NOT_LOADED = 0;
+    private static final int LOADING = 1;
+    private static final int LOADED = 2;
+
+    private final Context mContext;
+    private final Executor mExecutor;
+    private final ConcurrentHashMap<String, Integer> mHistory = new ConcurrentHashMap<>();
+    private final AtomicInteger mLoadState = new AtomicInteger(NOT_LOADED);
+
+    private final Runnable mLoadAction = new Runnable() {
+        @Override
+        public void run() {
+            final Map<String, ?> stored = getPreferences().getAll();
+            synchronized(PermissionHistoryStore.this) {
+                if(mLoadState.get() != LOADING) {
+                    return;
+                }
+                for(Map.Entry<String, ?> entry : stored.entrySet()) {
+                    if(entry.getValue() instanceof Integer) {
+                        mHistory.putIfAbsent(entry.getKey(), (Integer) entry.getValue());
+                    }
+                }
+                mLoadState.set(LOADED);
+            }
+        }
+    };
+
+    /**
+     * Create store writing on {@link AsyncTask#SERIAL_EXECUTOR}.
+     *
+     * @param context Any context; application context is used
+     */
+    public PermissionHistoryStore(Context context) {
+        this(context, AsyncTask.SERIAL_EXECUTOR);
+    }
+
+    /**
+     * @param context Any context; application context is used
+     * @param executor Executor loading history and running writes; tasks must not be reordered
+     */
+    public PermissionHistoryStore(Context context, Executor executor) {
+        mContext = context.getApplicationContext();
+        mExecutor = executor;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Before history is loaded, only results recorded in this process are known.
+     */
+    @Override
+    public boolean wasDeniedPermanently(String permission) {
+        load();
+        Integer flags = mHistory.get(permission);
+        return flags != null && (flags & FLAG_DENIED_PERMANENTLY) != 0;
+    }
+
+    @Override
+    public void record(String[] permissions, int[] grantResults, PermissionSet deniedPermanently) {
+        load();
+        final String[] changedPermissions = new String[permissions.length];
+        final int[] changedFlags = new int[permissions.length];
+        int changed = 0;
+        for(int i = 0; i < permissions.length; i++) {
+            int flags = FLAG_REQUESTED;
+            if(grantResults[i] != PackageManager.PERMISSION_GRANTED) {
+                flags |= deniedPermanently.contains(permissions[i]) ? FLAG_DENIED | FLAG_DENIED_PERMANENTLY : FLAG_DENIED;
+            }
+            Integer previous = mHistory.put(permissions[i], flags);
+            if(previous == null || previous != flags) {
+                changedPermissions[changed] = permissions[i];
+                changedFlags[changed] = flags;
+                changed++;
+            }
+        }
+        if(changed == 0) {
+            return;
+        }
+
+        final int count = changed;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences.Editor editor = getPreferences().edit();
+                for(int i = 0; i < count; i++) {
+                    editor.putInt(changedPermissions[i], changedFlags[i]);
+                }
+                editor.commit();
+            }
+        });
+    }
+
+    /**
+     * Drop entire history, ex. when user signs out. History that has not
+     * been loaded yet is not loaded anymore.
+     */
+    public void clear() {
+        synchronized(this) {
+            mLoadState.set(LOADED);
+            mHistory.clear();
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getPreferences().edit().clear().commit();
+            }
+        });
+    }
+
+    private SharedPreferences getPreferences() {
+        return mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Start loading stored history on first use. Entries recorded before
+     * load completes are newer than stored ones and are kept.
+     */
+    private void load() {
+        if(mLoadState.get() == NOT_LOADED && mLoadState.compareAndSet(NOT_LOADED, LOADING)) {
+            mExecutor.execute(mLoadAction);
+        }
+    }
+}
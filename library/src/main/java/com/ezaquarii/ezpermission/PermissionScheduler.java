@@ -0,0 +1,285 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Serializes permission requests of helpers owned by a single host.
+ *
+ * System shows one permission dialog at a time and overlapping requests
+ * are cancelled. Helpers built with {@link EzPermission.Builder#scheduler(PermissionScheduler, int)}
+ * do not request permissions on their own; their requests are queued by
+ * priority and sent one by one, each after results of the previous one are
+ * delivered. Requests with equal priority are sent in arrival order.
+ *
+ * Queued requests for the same permissions are coalesced into one request
+ * and its results are delivered to every coalesced helper. Permissions
+ * granted by earlier requests are not requested again.
+ *
+ * Results must be delivered to {@link #onRequestPermissionsResult(int, String[], int[])}
+ * using scheduler request code. If results can be lost, for example when host
+ * is destroyed while request is in flight, call {@link #reset()} so the queue
+ * is not blocked.
+ */
+public class PermissionScheduler {
+
+    /**
+     * Queued request: helpers waiting for the same permissions.
+     */
+    private static final class Request {
+
+        final PermissionSet permissions;
+        final ArrayList<EzPermission> helpers = new ArrayList<>(1);
+        final long enqueuedNanos;
+        PermissionSet skipped = PermissionSet.EMPTY;
+        int priority;
+
+        Request(PermissionSet permissions, int priority, long enqueuedNanos) {
+            this.permissions = permissions;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final PermissionPlatform mPlatform;
+    private final int mRequestCode;
+    private final GroupRequest.Post mDispatchPost;
+    private final ArrayList<Request> mQueue = new ArrayList<>();
+    private Request mInFlight = null;
+
+    private int mMaxQueueDepth = 0;
+    private int mRequestCount = 0;
+    private int mCoalescedCount = 0;
+    private long mTotalWaitNanos = 0;
+    private long mMaxWaitNanos = 0;
+
+    /**
+     * @param activity Activity used to request permissions
+     * @param requestCode Request code of scheduled requests; it must be different from helpers request codes
+     */
+    public PermissionScheduler(Activity activity, int requestCode) {
+        this(new EzPermission.AndroidPlatform(activity, null), requestCode, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param fragment Fragment used to request permissions
+     * @param requestCode Request code of scheduled requests; it must be different from helpers request codes
+     */
+    public PermissionScheduler(Fragment fragment, int requestCode) {
+        this(new EzPermission.AndroidPlatform(null, fragment), requestCode, new Handler(Looper.getMainLooper()));
+    }
+
+    PermissionScheduler(PermissionPlatform platform, int requestCode, Handler handler) {
+        mPlatform = platform;
+        mRequestCode = requestCode;
+        mDispatchPost = new GroupRequest.Post(handler, new Runnable() {
+            @Override
+            public void run() {
+                dispatchNext();
+            }
+        });
+    }
+
+    /**
+     * Queue helper request. It is called by helper state machine on entry
+     * to requesting state. Requests are dispatched at the end of current main
+     * thread dispatch window, so requests made together are ordered by priority.
+     *
+     * @param helper Helper requesting permissions
+     * @param priority Request priority; higher priority requests are sent first
+     */
+    void enqueue(EzPermission helper, int priority) {
+        if(mInFlight != null && mInFlight.helpers.contains(helper)) {
+            return;
+        }
+        final PermissionSet permissions = helper.getPermissions();
+        Request coalesced = null;
+        for(Request request : mQueue) {
+            if(request.helpers.contains(helper)) {
+                return;
+            }
+            if(coalesced == null && request.permissions.equals(permissions)) {
+                coalesced = request;
+            }
+        }
+
+        if(coalesced != null) {
+            coalesced.helpers.add(helper);
+            mCoalescedCount++;
+            if(priority > coalesced.priority) {
+                mQueue.remove(coalesced);
+                coalesced.priority = priority;
+                insert(coalesced);
+            }
+        } else {
+            final Request request = new Request(permissions, priority, System.nanoTime());
+            request.helpers.add(helper);
+            insert(request);
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+        }
+
+        if(mInFlight == null) {
+            mDispatchPost.schedule();
+        }
+    }
+
+    /**
+     * Insert request after all requests with the same or higher priority.
+     */
+    private void insert(Request request) {
+        int index = mQueue.size();
+        while(index > 0 && mQueue.get(index - 1).priority < request.priority) {
+            index--;
+        }
+        mQueue.add(index, request);
+    }
+
+    /**
+     * Send next queued request. Requests whose permissions have been granted in
+     * the meantime are completed immediately, without showing system dialog.
+     */
+    private void dispatchNext() {
+        while(mInFlight == null && !mQueue.isEmpty()) {
+            final Request request = mQueue.remove(0);
+            final long waitNanos = System.nanoTime() - request.enqueuedNanos;
+            mTotalWaitNanos += waitNanos;
+            mMaxWaitNanos = Math.max(mMaxWaitNanos, waitNanos);
+            mRequestCount++;
+
+            final PermissionSet missing = getMissingPermissions(request.permissions);
+            request.skipped = request.permissions.difference(missing);
+            if(missing.isEmpty()) {
+                final String[] granted = request.permissions.toArray();
+                final int[] grantResults = new int[granted.length];
+                Arrays.fill(grantResults, PackageManager.PERMISSION_GRANTED);
+                GroupRequest.deliver(request.helpers, granted, grantResults, PermissionSet.EMPTY);
+                continue;
+            }
+            mInFlight = request;
+            mPlatform.requestPermissions(missing.toArray(), mRequestCode);
+        }
+    }
+
+    private PermissionSet getMissingPermissions(PermissionSet permissions) {
+        long[] missing = new long[permissions.wordCount()];
+        for(int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if(!mPlatform.isGranted(PermissionSet.nameOf(id))) {
+                missing[id >>> 6] |= 1L << id;
+            }
+        }
+        return new PermissionSet(missing);
+    }
+
+    /**
+     * This methods should be called in {@link Activity#onRequestPermissionsResult(int, String[], int[])}.
+     * Results with different request code are ignored.
+     *
+     * Every helper of in-flight request receives results of all its permissions;
+     * permissions that were not requested, because they had been granted, are
+     * reported as granted, and permissions missing from results as denied.
+     * Empty results, delivered when request is interrupted, are delivered as
+     * empty to every helper. Next queued request is sent afterwards.
+     */
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if(requestCode != mRequestCode) {
+            return;
+        }
+
+        GroupRequest.checkResult(permissions, grantResults);
+
+        final Request request = mInFlight;
+        if(request == null) {
+            return;
+        }
+        mInFlight = null;
+        PermissionCache.update(permissions, grantResults);
+        GroupRequest.deliver(request.helpers, permissions, grantResults, request.skipped);
+
+        dispatchNext();
+    }
+
+    /**
+     * Abandon request in flight, whose results will not be delivered.
+     * Its helpers receive empty results, as for interrupted request, and
+     * queued requests are sent at the end of current dispatch window.
+     * If queue is empty, scheduled dispatch is cancelled.
+     */
+    public void reset() {
+        final Request request = mInFlight;
+        mInFlight = null;
+        if(request != null) {
+            GroupRequest.cancel(request.helpers);
+        }
+        if(mQueue.isEmpty()) {
+            mDispatchPost.cancel();
+        } else {
+            mDispatchPost.schedule();
+        }
+    }
+
+    public int getRequestCode() {
+        return mRequestCode;
+    }
+
+    /**
+     * @return Number of queued requests, not counting request in flight
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * @return Highest number of queued requests
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    /**
+     * @return Number of dispatched requests, including requests completed without system dialog
+     */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * @return Number of helper requests merged into already queued requests
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return Total time requests spent in queue, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return mTotalWaitNanos;
+    }
+
+    /**
+     * @return Longest time a request spent in queue, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return mMaxWaitNanos;
+    }
+}
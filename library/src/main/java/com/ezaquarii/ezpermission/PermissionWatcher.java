@@ -0,0 +1,137 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Notices permissions granted or revoked in system settings.
+ *
+ * Helpers built with {@link EzPermission.Builder#watcher(PermissionWatcher)} are
+ * tracked as long as they are alive. On host resume, watcher checks union of
+ * permissions of all granted and denied helpers, every permission once,
+ * and revalidates only helpers whose grant state changed. Revalidation is
+ * equivalent to {@link EzPermission#call()} and it moves helper between
+ * granted and denied states; helpers in other states are not affected.
+ *
+ * Host must call {@link #onResume()} from its own onResume(). Enabled
+ * {@link PermissionCache} is invalidated by the watcher before the check,
+ * so watcher can be called before or after {@code super.onResume()}.
+ */
+public class PermissionWatcher {
+
+    private final PermissionPlatform mPlatform;
+    private final ArrayList<WeakReference<EzPermission>> mHelpers = new ArrayList<>();
+
+    /**
+     * @param activity Activity used to check permissions
+     */
+    public PermissionWatcher(Activity activity) {
+        this(new EzPermission.AndroidPlatform(activity, null));
+    }
+
+    /**
+     * @param fragment Fragment used to check permissions
+     */
+    public PermissionWatcher(Fragment fragment) {
+        this(new EzPermission.AndroidPlatform(null, fragment));
+    }
+
+    PermissionWatcher(PermissionPlatform platform) {
+        mPlatform = platform;
+    }
+
+    /**
+     * Start watching helper. Watcher does not keep helper alive.
+     *
+     * @param helper Helper to watch
+     */
+    public void watch(EzPermission helper) {
+        for(WeakReference<EzPermission> reference : mHelpers) {
+            if(reference.get() == helper) {
+                return;
+            }
+        }
+        mHelpers.add(new WeakReference<>(helper));
+    }
+
+    /**
+     * Stop watching helper. If helper is not watched, this call has no effect.
+     *
+     * @param helper Helper to stop watching
+     */
+    public void unwatch(EzPermission helper) {
+        for(int i = mHelpers.size() - 1; i >= 0; i--) {
+            EzPermission watched = mHelpers.get(i).get();
+            if(watched == null || watched == helper) {
+                mHelpers.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Check permissions of watched helpers and revalidate helpers whose
+     * grant state changed. Callbacks of revalidated helpers are called
+     * from this method. Permission cache is invalidated first, as cached
+     * state may predate changes made in system settings.
+     *
+     * @return Number of revalidated helpers
+     */
+    public int onResume() {
+        if(PermissionCache.isEnabled()) {
+            PermissionCache.invalidate();
+        }
+        final ArrayList<EzPermission> helpers = new ArrayList<>(mHelpers.size());
+        PermissionSet permissions = PermissionSet.EMPTY;
+        for(int i = mHelpers.size() - 1; i >= 0; i--) {
+            EzPermission helper = mHelpers.get(i).get();
+            if(helper == null) {
+                mHelpers.remove(i);
+            } else {
+                helpers.add(helper);
+                if(helper.needsGrantCheck()) {
+                    permissions = permissions.union(helper.getPermissions());
+                }
+            }
+        }
+
+        final long[] granted = new long[permissions.wordCount()];
+        for(int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if(mPlatform.isGranted(PermissionSet.nameOf(id))) {
+                granted[id >>> 6] |= 1L << id;
+            }
+        }
+        final PermissionSet grantedSet = new PermissionSet(granted);
+
+        int revalidated = 0;
+        for(int i = helpers.size() - 1; i >= 0; i--) {
+            if(helpers.get(i).revalidate(grantedSet)) {
+                revalidated++;
+            }
+        }
+        return revalidated;
+    }
+
+    /**
+     * @return Number of watched helpers, including helpers that are no longer alive
+     */
+    public int size() {
+        return mHelpers.size();
+    }
+}
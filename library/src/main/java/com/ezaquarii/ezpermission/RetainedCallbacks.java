@@ -0,0 +1,160 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+/**
+ * Callbacks of a retained helper. State machine calls stable slots and every
+ * slot forwards to callback of current host, so host can be swapped after
+ * configuration change without rebuilding the state machine.
+ *
+ * Callbacks called while no host is attached are remembered and replayed,
+ * in original order, when next host attaches, so no outcome is lost.
+ */
+final class RetainedCallbacks {
+
+    static final int ON_GRANTED = 0;
+    static final int ON_RATIONALE = 1;
+    static final int ON_DENIED = 2;
+    static final int ON_DENIED_PERMANENTLY = 3;
+    static final int ON_CANCELLED = 4;
+    private static final int COUNT = 5;
+
+    private final class Slot implements Runnable {
+
+        private Runnable mCallback;
+
+        /**
+         * Order of last call made while detached or 0, if there is no pending call.
+         */
+        private int mPendingOrder = 0;
+
+        Slot(Runnable callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            final Runnable callback;
+            synchronized(RetainedCallbacks.this) {
+                callback = mCallback;
+                if(callback == null) {
+                    mPendingOrder = ++mPendingCount;
+                    return;
+                }
+            }
+            callback.run();
+        }
+    }
+
+    private final Slot[] mSlots = new Slot[COUNT];
+    private int mPendingCount = 0;
+
+    /**
+     * Slots are created only for provided callbacks, as missing callbacks change
+     * the flow, ex. rationale is never shown without rationale callback.
+     *
+     * @param callbacks Callbacks indexed by slot constants; can contain nulls
+     */
+    RetainedCallbacks(Runnable[] callbacks) {
+        for(int i = 0; i < COUNT; i++) {
+            if(callbacks[i] != null) {
+                mSlots[i] = new Slot(callbacks[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Slot forwarding to callback or null, if callback is not provided
+     */
+    Runnable get(int slot) {
+        return mSlots[slot];
+    }
+
+    /**
+     * Forward slots to callbacks of new host. Pending calls are not replayed
+     * until {@link #replay()} is called.
+     *
+     * @param callbacks Callbacks indexed by slot constants; can contain nulls
+     * @return false if callbacks do not match slots and helper must be rebuilt
+     */
+    synchronized boolean attach(Runnable[] callbacks) {
+        for(int i = 0; i < COUNT; i++) {
+            if((callbacks[i] == null) != (mSlots[i] == null)) {
+                return false;
+            }
+        }
+        for(int i = 0; i < COUNT; i++) {
+            if(mSlots[i] != null) {
+                mSlots[i].mCallback = callbacks[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop callbacks of old host, so it can be garbage collected. Calls made
+     * until next host attaches become pending.
+     */
+    synchronized void detach() {
+        for(Slot slot : mSlots) {
+            if(slot != null) {
+                slot.mCallback = null;
+            }
+        }
+    }
+
+    /**
+     * Take pending calls of callbacks replaced by this instance, ex. when
+     * helper is rebuilt. Calls of slots missing in this instance are dropped.
+     *
+     * @param previous Callbacks of previous helper
+     */
+    void takePending(RetainedCallbacks previous) {
+        synchronized(previous) {
+            synchronized(this) {
+                for(int i = 0; i < COUNT; i++) {
+                    if(previous.mSlots[i] != null && mSlots[i] != null) {
+                        mSlots[i].mPendingOrder = previous.mSlots[i].mPendingOrder;
+                    }
+                }
+                mPendingCount = previous.mPendingCount;
+            }
+        }
+    }
+
+    /**
+     * Run pending calls with callbacks of current host, in the order they were made.
+     */
+    void replay() {
+        while(true) {
+            final Slot next;
+            synchronized(this) {
+                Slot first = null;
+                for(Slot slot : mSlots) {
+                    if(slot != null && slot.mPendingOrder != 0 && slot.mCallback != null
+                            && (first == null || slot.mPendingOrder < first.mPendingOrder)) {
+                        first = slot;
+                    }
+                }
+                if(first == null) {
+                    return;
+                }
+                first.mPendingOrder = 0;
+                next = first;
+            }
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright (C) EzPermission by Krzysztof Narkiewicz (hello@ezaquarii.com)
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.ezaquarii.ezpermission;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.util.SparseArray;
+
+/**
+ * Headless retained fragment keeping helpers built with
+ * {@link EzPermission.Builder#retained()} across configuration changes.
+ * It requests permissions on behalf of its helpers, so request results
+ * are delivered to it directly and routed by request code.
+ *
+ * This fragment is added automatically; it is public only because
+ * fragment manager must be able to instantiate it.
+ */
+public class RetainedHelperFragment extends Fragment {
+
+    static final String TAG = "com.ezaquarii.ezpermission.retained";
+
+    private final SparseArray<EzPermission> mHelpers = new SparseArray<>();
+
+    public RetainedHelperFragment() {
+        setRetainInstance(true);
+    }
+
+    /**
+     * Find fragment retained by activity or add a new one. Retained fragment
+     * is restored by {@link FragmentActivity#onCreate(android.os.Bundle)}, so
+     * activity must be attached.
+     */
+    static RetainedHelperFragment of(FragmentActivity activity) {
+        if(activity.getWindow() == null) {
+            throw new IllegalStateException("Retained helper must be built in onCreate() or later");
+        }
+        return of(activity.getSupportFragmentManager());
+    }
+
+    /**
+     * Find fragment retained by host fragment or add a new one. Host fragment
+     * must be attached.
+     */
+    static RetainedHelperFragment of(Fragment fragment) {
+        if(fragment.getContext() == null) {
+            throw new IllegalStateException("Retained helper must be built in onCreate() or later");
+        }
+        return of(fragment.getChildFragmentManager());
+    }
+
+    /**
+     * Fragment carries no state of its own, so it can be added after host
+     * state has been saved; it is then simply not restored with the host.
+     */
+    private static RetainedHelperFragment of(FragmentManager fragmentManager) {
+        RetainedHelperFragment fragment = (RetainedHelperFragment) fragmentManager.findFragmentByTag(TAG);
+        if(fragment == null) {
+            fragment = new RetainedHelperFragment();
+            final FragmentTransaction transaction = fragmentManager.beginTransaction().add(fragment, TAG);
+            if(fragmentManager.isStateSaved()) {
+                transaction.commitNowAllowingStateLoss();
+            } else {
+                transaction.commitNow();
+            }
+        }
+        return fragment;
+    }
+
+    EzPermission get(int requestCode) {
+        return mHelpers.get(requestCode);
+    }
+
+    void put(EzPermission helper) {
+        mHelpers.put(helper.getRequestCode(), helper);
+    }
+
+    /**
+     * Retained fragment is detached from old host before configuration change;
+     * callbacks of old host are dropped and outcomes delivered until new host
+     * builds its helpers are replayed to the new host.
+     */
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        for(int i = 0; i < mHelpers.size(); i++) {
+            mHelpers.valueAt(i).detachRetained();
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        final EzPermission helper = mHelpers.get(requestCode);
+        if(helper != null) {
+            helper.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mHelpers.clear();
+    }
+}
@@ -22,6 +22,7 @@ import android.util.Log
 import android.view.View
 import android.widget.Toast
 import com.ezaquarii.ezpermission.EzPermission
+import com.ezaquarii.ezpermission.ktx.ezPermission
 import com.ezaquarii.ezpermission.sample.R
 import kotlinx.android.synthetic.main.activity_main.*
 
@@ -32,19 +33,19 @@ class MainActivity : AppCompatActivity() {
         @JvmField val REQUEST_AUDIO_PERMISSION = 2000;
     }
 
-    private val mInitCamera = EzPermission.of(this, REQUEST_CAMERA_PERMISSION, arrayOf(Manifest.permission.CAMERA, Manifest.permission.WRITE_EXTERNAL_STORAGE))
-            .onGranted{ onCameraGranted() }
-            .onRationale{ onCameraRationale() }
-            .onDenied{ onCameraDenied() }
-            .onDeniedPermanantly{ onCameraDeniedPermanently() }
-            .build()
+    private val mInitCamera = ezPermission(REQUEST_CAMERA_PERMISSION, Manifest.permission.CAMERA, Manifest.permission.WRITE_EXTERNAL_STORAGE) {
+        onGranted { onCameraGranted() }
+        onRationale { onCameraRationale() }
+        onDenied { onCameraDenied() }
+        onDeniedPermanently { onCameraDeniedPermanently() }
+    }
 
-    private val mRecordAudio = EzPermission.of(this, REQUEST_AUDIO_PERMISSION, arrayOf(Manifest.permission.RECORD_AUDIO, Manifest.permission.WRITE_EXTERNAL_STORAGE))
-            .onGranted{ onAudioGranted() }
-            .onRationale{ onAudioRationale() }
-            .onDenied{ onAudioPermissionDenied() }
-            .onDeniedPermanantly{ onAudioPermissionDeniedPermanently() }
-            .build()
+    private val mRecordAudio = ezPermission(REQUEST_AUDIO_PERMISSION, Manifest.permission.RECORD_AUDIO, Manifest.permission.WRITE_EXTERNAL_STORAGE) {
+        onGranted { onAudioGranted() }
+        onRationale { onAudioRationale() }
+        onDenied { onAudioPermissionDenied() }
+        onDeniedPermanently { onAudioPermissionDeniedPermanently() }
+    }
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)